@@ -0,0 +1,20 @@
+--
+-- Moves the ids of ocfl_object_versions and tar_parts from serial columns to the pooled sequences that Hibernate now
+-- uses (allocation size 50). Run once against an existing PostgreSQL database, with the service stopped, before
+-- starting the new version.
+--
+BEGIN;
+
+CREATE SEQUENCE IF NOT EXISTS ocfl_object_versions_seq INCREMENT BY 50;
+ALTER SEQUENCE ocfl_object_versions_seq INCREMENT BY 50;
+SELECT setval('ocfl_object_versions_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM ocfl_object_versions));
+ALTER TABLE ocfl_object_versions ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS ocfl_object_versions_id_seq;
+
+CREATE SEQUENCE IF NOT EXISTS tar_parts_seq INCREMENT BY 50;
+ALTER SEQUENCE tar_parts_seq INCREMENT BY 50;
+SELECT setval('tar_parts_seq', (SELECT COALESCE(MAX(id), 0) + 50 FROM tar_parts));
+ALTER TABLE tar_parts ALTER COLUMN id DROP DEFAULT;
+DROP SEQUENCE IF EXISTS tar_parts_id_seq;
+
+COMMIT;
@@ -25,7 +25,12 @@ import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import io.dropwizard.views.View;
 import io.dropwizard.views.ViewBundle;
+import nl.knaw.dans.catalog.cli.BackfillSearchFieldsCommand;
+import nl.knaw.dans.catalog.cli.CheckIndexCommand;
 import nl.knaw.dans.catalog.cli.ReindexCommand;
+import nl.knaw.dans.catalog.cli.RollbackReindexCommand;
+import nl.knaw.dans.catalog.core.CheckIndexTask;
+import nl.knaw.dans.catalog.core.OutboxIndexerTask;
 import nl.knaw.dans.catalog.resource.api.DefaultApiResource;
 import nl.knaw.dans.catalog.resource.api.OcflObjectApiResource;
 import nl.knaw.dans.catalog.resource.api.TarAPIResource;
@@ -33,6 +38,7 @@ import nl.knaw.dans.catalog.resource.view.ErrorView;
 import nl.knaw.dans.catalog.resource.web.ArchiveDetailResource;
 
 import javax.ws.rs.core.MediaType;
+import java.util.concurrent.TimeUnit;
 
 public class DdVaultCatalogApplication extends Application<DdVaultCatalogConfiguration> {
     private final HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle = new DdVaultHibernateBundle();
@@ -53,15 +59,35 @@ public class DdVaultCatalogApplication extends Application<DdVaultCatalogConfigu
         bootstrap.getObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
         bootstrap.addCommand(new ReindexCommand(hibernateBundle));
+        bootstrap.addCommand(new BackfillSearchFieldsCommand(hibernateBundle));
+        bootstrap.addCommand(new RollbackReindexCommand());
+        bootstrap.addCommand(new CheckIndexCommand(hibernateBundle));
     }
 
     @Override
     public void run(final DdVaultCatalogConfiguration configuration, final Environment environment) {
-        var useCases = UseCasesBuilder.build(configuration, hibernateBundle);
+        var metadataReader = UseCasesBuilder.buildMetadataReader(configuration, environment.metrics());
+        var solrSearchIndex = UseCasesBuilder.buildSolrSearchIndex(configuration, metadataReader, environment.metrics());
+        var useCasesSearchIndex = UseCasesBuilder.buildOutboxSearchIndex(configuration, hibernateBundle, solrSearchIndex);
+        var useCases = UseCasesBuilder.build(configuration, hibernateBundle, environment.metrics(), useCasesSearchIndex, metadataReader);
+        var outboxIndexer = UseCasesBuilder.buildOutboxIndexer(configuration, hibernateBundle, environment.metrics(), solrSearchIndex);
+
+        // managed objects are stopped in reverse order, so the outbox indexer stops before the Solr updates are drained
+        environment.lifecycle().manage(solrSearchIndex);
+
+        environment.lifecycle().scheduledExecutorService("outbox-indexer").build()
+            .scheduleWithFixedDelay(new OutboxIndexerTask(outboxIndexer), 0, configuration.getOutbox().getPollInterval().toMilliseconds(), TimeUnit.MILLISECONDS);
+
+        if (configuration.getSolr() != null) {
+            // repairs go through the outbox, like all other updates of the service
+            var checker = UseCasesBuilder.buildSolrIndexChecker(configuration, hibernateBundle, environment.metrics(), useCasesSearchIndex, metadataReader);
+            environment.lifecycle().manage(checker);
+            environment.admin().addTask(new CheckIndexTask(checker));
+        }
 
         environment.jersey().register(new DefaultApiResource());
         environment.jersey().register(new TarAPIResource(useCases));
-        environment.jersey().register(new OcflObjectApiResource(useCases));
+        environment.jersey().register(new OcflObjectApiResource(useCases, configuration.getBulk().getChunkSize()));
         environment.jersey().register(new ArchiveDetailResource(useCases));
         environment.jersey().register(new ErrorEntityWriter<ErrorMessage, View>(MediaType.TEXT_HTML_TYPE, View.class) {
 
@@ -18,10 +18,15 @@ package nl.knaw.dans.catalog;
 
 import io.dropwizard.Configuration;
 import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import nl.knaw.dans.catalog.core.solr.MetadataExtractor;
+import nl.knaw.dans.catalog.core.solr.SolrCommitStrategy;
+import nl.knaw.dans.catalog.core.solr.SolrIndexLayout;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 @Data
@@ -34,9 +39,155 @@ public class DdVaultCatalogConfiguration extends Configuration {
     @Valid
     private SolrConfig solr;
 
+    @Valid
+    @NotNull
+    private BulkConfig bulk = new BulkConfig();
+
+    @Valid
+    @NotNull
+    private OutboxConfig outbox = new OutboxConfig();
+
+    @Valid
+    @NotNull
+    private ReindexConfig reindex = new ReindexConfig();
+
+    @Valid
+    @NotNull
+    private MetadataConfig metadata = new MetadataConfig();
+
+    @Valid
+    @NotNull
+    private ReadCacheConfig readCache = new ReadCacheConfig();
+
     @Data
     public static class SolrConfig {
         private String url;
         private String schema;
+        // how updates are made visible to searches, see SolrCommitStrategy
+        @NotNull
+        private SolrCommitStrategy commitStrategy = SolrCommitStrategy.SOFT;
+        // only used with the COMMIT_WITHIN strategy
+        @NotNull
+        private Duration commitWithin = Duration.seconds(1);
+        @Valid
+        @NotNull
+        private SolrUpdatesConfig updates = new SolrUpdatesConfig();
+        @Valid
+        @NotNull
+        private SolrMappingConfig mapping = new SolrMappingConfig();
+        // changing the layout requires a reindex, see SolrIndexLayout
+        @NotNull
+        private SolrIndexLayout layout = SolrIndexLayout.EMBEDDED;
+        // documents of which Solr has a version with the same fingerprint are not sent again
+        private boolean skipUnchanged = true;
+        @Valid
+        @NotNull
+        private SolrBlueGreenConfig blueGreen = new SolrBlueGreenConfig();
+    }
+
+    @Data
+    public static class SolrBlueGreenConfig {
+        // the config set in ZooKeeper of the collections that reindex --blue-green creates; required for that option
+        private String configSet;
+        @Min(1)
+        private int numShards = 1;
+        @Min(1)
+        private int replicationFactor = 1;
+    }
+
+    @Data
+    public static class SolrMappingConfig {
+        // number of threads that map the OCFL object versions of large TARs to documents, shared by all writers
+        @Min(1)
+        private int threads = 2;
+        // TARs with more OCFL object versions are mapped in chunks of this size, each sent as soon as it is mapped
+        @Min(1)
+        private int chunkSize = 100;
+    }
+
+    @Data
+    public static class SolrUpdatesConfig {
+        // documents waiting to be sent; writers block when the queue is full
+        @Min(1)
+        private int queueCapacity = 10000;
+        // a batch is sent when it has batchSize documents or flushInterval after its first document
+        @Min(1)
+        private int batchSize = 500;
+        @NotNull
+        private Duration flushInterval = Duration.milliseconds(200);
+        // number of update requests that may be in flight at the same time
+        @Min(1)
+        private int maxInFlight = 4;
+        // how long to wait on shutdown for queued documents to be sent
+        @NotNull
+        private Duration shutdownTimeout = Duration.seconds(30);
+    }
+
+    @Data
+    public static class BulkConfig {
+        // number of items stored per transaction by the bulk endpoint
+        @Min(1)
+        private int chunkSize = 500;
+    }
+
+    @Data
+    public static class OutboxConfig {
+        // how long to wait before looking for new entries once the outbox is drained
+        @NotNull
+        private Duration pollInterval = Duration.seconds(1);
+        // number of entries sent to the search index per transaction
+        @Min(1)
+        private int batchSize = 100;
+        // the delay before retrying a failed entry doubles with every attempt, from initialBackoff up to maxBackoff
+        @NotNull
+        private Duration initialBackoff = Duration.seconds(5);
+        @NotNull
+        private Duration maxBackoff = Duration.minutes(10);
+        // new entries wait this long before they are sent, so that further updates of the same OCFL object version or
+        // TAR in the meantime are sent together with them, as one update of its latest state; 0 disables this
+        @NotNull
+        private Duration coalesceWindow = Duration.seconds(2);
+        // how long requests with waitUntilVisible wait for their changes to be sent to the search index
+        @NotNull
+        private Duration visibilityTimeout = Duration.seconds(30);
+    }
+
+    @Data
+    public static class MetadataConfig {
+        // number of distinct metadata documents of which the extracted search fields are kept; 0 disables the cache
+        @Min(0)
+        private long cacheSize = 10000;
+        @NotNull
+        private MetadataExtractor extractor = MetadataExtractor.JENA;
+    }
+
+    @Data
+    public static class ReadCacheConfig {
+        // number of lookups of OCFL object versions and TARs of which the result is kept, per kind of lookup; 0 disables
+        // the cache
+        @Min(0)
+        private long maximumSize = 10000;
+        // changes made by this service remove the affected results right away; this bounds how long changes made
+        // elsewhere, for instance by another instance of the service, can go unnoticed
+        @NotNull
+        private Duration expireAfterWrite = Duration.minutes(5);
+    }
+
+    @Data
+    public static class ReindexConfig {
+        // number of OCFL object versions read per transaction
+        @Min(1)
+        private int pageSize = 1000;
+        // number of threads that map OCFL object versions to search documents
+        @Min(1)
+        private int workers = 4;
+        // replaces solr.updates.batchSize during a reindex; larger batches mean fewer update requests
+        @Min(1)
+        private int solrBatchSize = 2000;
+        @NotNull
+        private Duration progressInterval = Duration.seconds(10);
+        // how often the position of a reindex is saved, so that it can be resumed
+        @NotNull
+        private Duration checkpointInterval = Duration.seconds(30);
     }
 }
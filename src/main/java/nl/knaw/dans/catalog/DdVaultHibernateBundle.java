@@ -18,17 +18,39 @@ package nl.knaw.dans.catalog;
 
 import io.dropwizard.db.PooledDataSourceFactory;
 import io.dropwizard.hibernate.HibernateBundle;
+import nl.knaw.dans.catalog.db.IndexOutboxEntry;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.ReindexCheckpoint;
 import nl.knaw.dans.catalog.db.Tar;
 import nl.knaw.dans.catalog.db.TarPart;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+
+import java.util.Map;
 
 public class DdVaultHibernateBundle extends HibernateBundle<DdVaultCatalogConfiguration> {
+    // defaults for settings that are not in the database properties of the configuration file
+    private static final Map<String, String> DEFAULT_PROPERTIES = Map.of(
+        AvailableSettings.STATEMENT_BATCH_SIZE, "50",
+        AvailableSettings.ORDER_INSERTS, "true",
+        AvailableSettings.ORDER_UPDATES, "true"
+    );
+
     public DdVaultHibernateBundle() {
-        super(OcflObjectVersion.class, Tar.class, TarPart.class);
+        super(OcflObjectVersion.class, Tar.class, TarPart.class, IndexOutboxEntry.class, ReindexCheckpoint.class);
     }
 
     @Override
     public PooledDataSourceFactory getDataSourceFactory(DdVaultCatalogConfiguration ddVaultCatalogConfiguration) {
         return ddVaultCatalogConfiguration.getDatabase();
     }
+
+    @Override
+    protected void configure(Configuration configuration) {
+        DEFAULT_PROPERTIES.forEach((key, value) -> {
+            if (configuration.getProperty(key) == null) {
+                configuration.setProperty(key, value);
+            }
+        });
+    }
 }
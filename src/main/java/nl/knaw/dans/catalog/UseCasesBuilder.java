@@ -15,23 +15,65 @@
  */
 package nl.knaw.dans.catalog;
 
+import com.codahale.metrics.MetricRegistry;
 import io.dropwizard.hibernate.HibernateBundle;
 import io.dropwizard.hibernate.UnitOfWorkAwareProxyFactory;
 import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader;
+import nl.knaw.dans.catalog.core.solr.SolrIndexChecker;
+import nl.knaw.dans.catalog.core.solr.SolrIndexLayout;
 import nl.knaw.dans.catalog.core.solr.SolrServiceImpl;
+import nl.knaw.dans.catalog.core.CatalogReadCache;
+import nl.knaw.dans.catalog.core.IndexOutboxRepository;
 import nl.knaw.dans.catalog.core.OcflObjectVersionRepository;
+import nl.knaw.dans.catalog.core.OutboxIndexer;
+import nl.knaw.dans.catalog.core.OutboxSearchIndex;
+import nl.knaw.dans.catalog.core.ReindexCheckpointRepository;
+import nl.knaw.dans.catalog.core.Reindexer;
+import nl.knaw.dans.catalog.core.SearchFieldsBackfiller;
 import nl.knaw.dans.catalog.core.SearchIndex;
 import nl.knaw.dans.catalog.core.TarRepository;
 import nl.knaw.dans.catalog.core.UseCases;
+import nl.knaw.dans.catalog.db.HibernateAfterCommitExecutor;
+import nl.knaw.dans.catalog.db.IndexOutboxDAO;
 import nl.knaw.dans.catalog.db.OcflObjectVersionDAO;
+import nl.knaw.dans.catalog.db.ReindexCheckpointDAO;
 import nl.knaw.dans.catalog.db.TarDAO;
 
 public class UseCasesBuilder {
 
-    public static UseCases build(DdVaultCatalogConfiguration configuration, HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle) {
-        var ocflObjectMetadataReader = new OcflObjectMetadataReader();
-        var searchIndex = new SolrServiceImpl(configuration.getSolr(), ocflObjectMetadataReader);
-        var ocflObjectVersionRepository = new OcflObjectVersionDAO(hibernateBundle.getSessionFactory());
+    public static OcflObjectMetadataReader buildMetadataReader(DdVaultCatalogConfiguration configuration, MetricRegistry metricRegistry) {
+        return new OcflObjectMetadataReader(configuration.getMetadata(), metricRegistry);
+    }
+
+    public static SolrServiceImpl buildSolrSearchIndex(DdVaultCatalogConfiguration configuration, OcflObjectMetadataReader metadataReader, MetricRegistry metricRegistry) {
+        return new SolrServiceImpl(configuration.getSolr(), metadataReader, metricRegistry);
+    }
+
+    // target is the search index that the outbox indexer sends the entries to
+    public static SearchIndex buildOutboxSearchIndex(DdVaultCatalogConfiguration configuration, HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle, SearchIndex target) {
+        var layout = configuration.getSolr() == null ? SolrIndexLayout.EMBEDDED : configuration.getSolr().getLayout();
+
+        // proxied for the unit of work in which waitUntilVisible looks at the outbox
+        return new UnitOfWorkAwareProxyFactory(hibernateBundle)
+            .create(OutboxSearchIndex.class,
+                new Class[]{
+                    IndexOutboxRepository.class,
+                    DdVaultCatalogConfiguration.OutboxConfig.class,
+                    SolrIndexLayout.class,
+                    SearchIndex.class,
+                },
+                new Object[]{
+                    new IndexOutboxDAO(hibernateBundle.getSessionFactory()),
+                    configuration.getOutbox(),
+                    layout,
+                    target
+                }
+            );
+    }
+
+    public static UseCases build(DdVaultCatalogConfiguration configuration, HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle, MetricRegistry metricRegistry,
+        SearchIndex searchIndex, OcflObjectMetadataReader metadataReader) {
+        var ocflObjectVersionRepository = new OcflObjectVersionDAO(hibernateBundle.getSessionFactory(), metricRegistry);
         var tarRepository = new TarDAO(hibernateBundle.getSessionFactory());
 
         return new UnitOfWorkAwareProxyFactory(hibernateBundle)
@@ -40,11 +82,99 @@ public class UseCasesBuilder {
                     OcflObjectVersionRepository.class,
                     TarRepository.class,
                     SearchIndex.class,
+                    OcflObjectMetadataReader.class,
+                    CatalogReadCache.class,
                 },
                 new Object[]{
                     ocflObjectVersionRepository,
                     tarRepository,
-                    searchIndex
+                    searchIndex,
+                    metadataReader,
+                    new CatalogReadCache(configuration.getReadCache(), metricRegistry, new HibernateAfterCommitExecutor(hibernateBundle.getSessionFactory()))
+                }
+            );
+    }
+
+    public static OutboxIndexer buildOutboxIndexer(DdVaultCatalogConfiguration configuration, HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle, MetricRegistry metricRegistry,
+        SearchIndex searchIndex) {
+        var sessionFactory = hibernateBundle.getSessionFactory();
+
+        return new UnitOfWorkAwareProxyFactory(hibernateBundle)
+            .create(OutboxIndexer.class,
+                new Class[]{
+                    IndexOutboxRepository.class,
+                    OcflObjectVersionRepository.class,
+                    TarRepository.class,
+                    SearchIndex.class,
+                    DdVaultCatalogConfiguration.OutboxConfig.class,
+                    MetricRegistry.class,
+                },
+                new Object[]{
+                    new IndexOutboxDAO(sessionFactory),
+                    new OcflObjectVersionDAO(sessionFactory, metricRegistry),
+                    new TarDAO(sessionFactory),
+                    searchIndex,
+                    configuration.getOutbox(),
+                    metricRegistry
+                }
+            );
+    }
+
+    public static Reindexer buildReindexer(DdVaultCatalogConfiguration configuration, HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle, MetricRegistry metricRegistry,
+        SearchIndex searchIndex) {
+        return new UnitOfWorkAwareProxyFactory(hibernateBundle)
+            .create(Reindexer.class,
+                new Class[]{
+                    OcflObjectVersionRepository.class,
+                    ReindexCheckpointRepository.class,
+                    SearchIndex.class,
+                    DdVaultCatalogConfiguration.ReindexConfig.class,
+                },
+                new Object[]{
+                    new OcflObjectVersionDAO(hibernateBundle.getSessionFactory(), metricRegistry),
+                    new ReindexCheckpointDAO(hibernateBundle.getSessionFactory()),
+                    searchIndex,
+                    configuration.getReindex()
+                }
+            );
+    }
+
+    public static SearchFieldsBackfiller buildSearchFieldsBackfiller(DdVaultCatalogConfiguration configuration, HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle,
+        MetricRegistry metricRegistry, OcflObjectMetadataReader metadataReader) {
+        return new UnitOfWorkAwareProxyFactory(hibernateBundle)
+            .create(SearchFieldsBackfiller.class,
+                new Class[]{
+                    OcflObjectVersionRepository.class,
+                    OcflObjectMetadataReader.class,
+                    DdVaultCatalogConfiguration.ReindexConfig.class,
+                },
+                new Object[]{
+                    new OcflObjectVersionDAO(hibernateBundle.getSessionFactory(), metricRegistry),
+                    metadataReader,
+                    configuration.getReindex()
+                }
+            );
+    }
+
+    public static SolrIndexChecker buildSolrIndexChecker(DdVaultCatalogConfiguration configuration, HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle,
+        MetricRegistry metricRegistry, SearchIndex searchIndex, OcflObjectMetadataReader metadataReader) {
+        return new UnitOfWorkAwareProxyFactory(hibernateBundle)
+            .create(SolrIndexChecker.class,
+                new Class[]{
+                    OcflObjectVersionRepository.class,
+                    TarRepository.class,
+                    SearchIndex.class,
+                    OcflObjectMetadataReader.class,
+                    DdVaultCatalogConfiguration.SolrConfig.class,
+                    DdVaultCatalogConfiguration.ReindexConfig.class,
+                },
+                new Object[]{
+                    new OcflObjectVersionDAO(hibernateBundle.getSessionFactory(), metricRegistry),
+                    new TarDAO(hibernateBundle.getSessionFactory()),
+                    searchIndex,
+                    metadataReader,
+                    configuration.getSolr(),
+                    configuration.getReindex()
                 }
             );
     }
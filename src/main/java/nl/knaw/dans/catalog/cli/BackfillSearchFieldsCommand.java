@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.cli;
+
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.hibernate.HibernateBundle;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import net.sourceforge.argparse4j.inf.Namespace;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.UseCasesBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BackfillSearchFieldsCommand extends ConfiguredCommand<DdVaultCatalogConfiguration> {
+    private static final Logger log = LoggerFactory.getLogger(BackfillSearchFieldsCommand.class);
+    private final HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle;
+
+    public BackfillSearchFieldsCommand(HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle) {
+        super("backfill-search-fields", "Stores the search fields of OCFL object versions that were created before they were extracted at ingest");
+        this.hibernateBundle = hibernateBundle;
+    }
+
+    @Override
+    protected void run(Bootstrap<DdVaultCatalogConfiguration> bootstrap, Namespace namespace, DdVaultCatalogConfiguration configuration) throws Exception {
+        hibernateBundle.run(configuration,
+            new Environment("dd-vault-catalog-environment",
+                bootstrap.getObjectMapper(),
+                bootstrap.getValidatorFactory(),
+                bootstrap.getMetricRegistry(),
+                bootstrap.getClassLoader(),
+                bootstrap.getHealthCheckRegistry(),
+                configuration)
+        );
+
+        log.info("Configured Hibernate");
+
+        var metadataReader = UseCasesBuilder.buildMetadataReader(configuration, bootstrap.getMetricRegistry());
+        var backfiller = UseCasesBuilder.buildSearchFieldsBackfiller(configuration, hibernateBundle, bootstrap.getMetricRegistry(), metadataReader);
+        var result = backfiller.backfill();
+
+        // the versions that failed are still indexed from their metadata, so they do not make the command fail
+        log.info("Stored search fields of {} OCFL object versions, {} failed", result.getOcflObjectVersions(), result.getFailed());
+    }
+}
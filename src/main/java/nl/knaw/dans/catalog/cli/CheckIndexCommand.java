@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.cli;
+
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.hibernate.HibernateBundle;
+import io.dropwizard.setup.Bootstrap;
+import io.dropwizard.setup.Environment;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.UseCasesBuilder;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CheckIndexCommand extends ConfiguredCommand<DdVaultCatalogConfiguration> {
+    private static final Logger log = LoggerFactory.getLogger(CheckIndexCommand.class);
+    private final HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle;
+
+    public CheckIndexCommand(HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle) {
+        super("check-index", "Compares the OCFL object versions in the database with the documents in Solr");
+        this.hibernateBundle = hibernateBundle;
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--repair")
+            .action(Arguments.storeTrue())
+            .help("Reindex the OCFL object versions that are missing or stale, and delete the documents without OCFL object version");
+    }
+
+    @Override
+    protected void run(Bootstrap<DdVaultCatalogConfiguration> bootstrap, Namespace namespace, DdVaultCatalogConfiguration configuration) throws Exception {
+        hibernateBundle.run(configuration,
+            new Environment("dd-vault-catalog-environment",
+                bootstrap.getObjectMapper(),
+                bootstrap.getValidatorFactory(),
+                bootstrap.getMetricRegistry(),
+                bootstrap.getClassLoader(),
+                bootstrap.getHealthCheckRegistry(),
+                configuration)
+        );
+
+        log.info("Configured Hibernate");
+
+        if (configuration.getSolr() == null) {
+            throw new IllegalStateException("Solr is not configured, there is no index to check");
+        }
+
+        var metadataReader = UseCasesBuilder.buildMetadataReader(configuration, bootstrap.getMetricRegistry());
+        var searchIndex = UseCasesBuilder.buildSolrSearchIndex(configuration, metadataReader, bootstrap.getMetricRegistry());
+        var checker = UseCasesBuilder.buildSolrIndexChecker(configuration, hibernateBundle, bootstrap.getMetricRegistry(), searchIndex, metadataReader);
+
+        try {
+            var repair = namespace.getBoolean("repair");
+            var result = checker.check(repair);
+
+            if (repair) {
+                searchIndex.waitUntilVisible();
+            }
+            else if (!result.isConsistent()) {
+                throw new SearchIndexException(String.format("Index inconsistent: %d missing, %d stale, %d orphaned documents; run with --repair to fix them",
+                    result.getMissing(), result.getStale(), result.getOrphaned()), null);
+            }
+        }
+        finally {
+            checker.stop();
+            searchIndex.stop();
+        }
+    }
+}
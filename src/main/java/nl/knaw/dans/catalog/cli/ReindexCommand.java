@@ -19,12 +19,22 @@ import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.hibernate.HibernateBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
 import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
 import nl.knaw.dans.catalog.UseCasesBuilder;
+import nl.knaw.dans.catalog.core.domain.ReindexResult;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import nl.knaw.dans.catalog.core.solr.SolrAliasSwitcher;
+import nl.knaw.dans.catalog.core.solr.SolrCollectionsImpl;
+import nl.knaw.dans.catalog.core.solr.SolrCommitStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.OffsetDateTime;
+
 public class ReindexCommand extends ConfiguredCommand<DdVaultCatalogConfiguration> {
     private static final Logger log = LoggerFactory.getLogger(ReindexCommand.class);
     private final HibernateBundle<DdVaultCatalogConfiguration> hibernateBundle;
@@ -35,9 +45,31 @@ public class ReindexCommand extends ConfiguredCommand<DdVaultCatalogConfiguratio
     }
 
     @Override
-    protected void run(Bootstrap<DdVaultCatalogConfiguration> bootstrap, Namespace namespace, DdVaultCatalogConfiguration configuration) throws Exception {
-        configuration.getDatabase().getProperties().put("hibernate.current_session_context_class", "org.hibernate.context.internal.ThreadLocalSessionContext");
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+        subparser.addArgument("--resume")
+            .action(Arguments.storeTrue())
+            .help("Continue after the last checkpoint of a reindex of the same range");
+        subparser.addArgument("--from")
+            .dest("from")
+            .help("Only reindex OCFL object versions with a bag id from this value (inclusive)");
+        subparser.addArgument("--to")
+            .dest("to")
+            .help("Only reindex OCFL object versions with a bag id up to this value (exclusive)");
+        subparser.addArgument("--since")
+            .dest("since")
+            .help("Only reindex OCFL object versions that were changed, or of which the TAR was changed, since this time, e.g. 2023-05-02T00:00:00Z");
+        subparser.addArgument("--blue-green")
+            .dest("blueGreen")
+            .action(Arguments.storeTrue())
+            .help("Reindex everything into a new collection and switch the alias in solr.schema to it when the number of documents matches the database");
+        subparser.addArgument("--force")
+            .action(Arguments.storeTrue())
+            .help("Also send the documents that are the same as the ones in Solr");
+    }
 
+    @Override
+    protected void run(Bootstrap<DdVaultCatalogConfiguration> bootstrap, Namespace namespace, DdVaultCatalogConfiguration configuration) throws Exception {
         hibernateBundle.run(configuration,
             new Environment("dd-vault-catalog-environment",
                 bootstrap.getObjectMapper(),
@@ -50,14 +82,82 @@ public class ReindexCommand extends ConfiguredCommand<DdVaultCatalogConfiguratio
 
         log.info("Configured Hibernate");
 
-        var useCases = UseCasesBuilder.build(configuration, hibernateBundle);
+        if (configuration.getSolr() != null) {
+            // large batches and no commits while indexing; the reindexer makes everything visible at the end
+            configuration.getSolr().setCommitStrategy(SolrCommitStrategy.NONE);
+            configuration.getSolr().getUpdates().setBatchSize(configuration.getReindex().getSolrBatchSize());
+
+            if (namespace.getBoolean("force")) {
+                configuration.getSolr().setSkipUnchanged(false);
+            }
+        }
+
+        if (namespace.getBoolean("blueGreen")) {
+            if (namespace.getBoolean("resume") || namespace.getString("from") != null || namespace.getString("to") != null || namespace.getString("since") != null) {
+                throw new IllegalArgumentException("--blue-green always reindexes everything, it cannot be combined with --resume, --from, --to or --since");
+            }
+
+            runBlueGreen(bootstrap, configuration);
+            return;
+        }
+
+        var metadataReader = UseCasesBuilder.buildMetadataReader(configuration, bootstrap.getMetricRegistry());
+        var searchIndex = UseCasesBuilder.buildSolrSearchIndex(configuration, metadataReader, bootstrap.getMetricRegistry());
+        var reindexer = UseCasesBuilder.buildReindexer(configuration, hibernateBundle, bootstrap.getMetricRegistry(), searchIndex);
 
         log.info("Configured services");
 
-        try (var session = hibernateBundle.getSessionFactory().getCurrentSession()) {
-            var transaction = session.beginTransaction();
-            useCases.reindexAllTars();
-            transaction.rollback();
+        try {
+            var since = namespace.getString("since");
+            var scope = ReindexScope.builder()
+                .from(namespace.getString("from"))
+                .to(namespace.getString("to"))
+                .since(since == null ? null : OffsetDateTime.parse(since))
+                .build();
+            checkComplete(reindexer.reindex(scope, namespace.getBoolean("resume")));
+        }
+        finally {
+            searchIndex.stop();
+        }
+    }
+
+    // the live collection is left alone until the new one is complete; the service keeps writing to the alias meanwhile,
+    // so the versions that changed during the reindex are reindexed again, before and after the switch
+    private void runBlueGreen(Bootstrap<DdVaultCatalogConfiguration> bootstrap, DdVaultCatalogConfiguration configuration) throws Exception {
+        try (var collections = new SolrCollectionsImpl(configuration.getSolr())) {
+            var switcher = new SolrAliasSwitcher(collections);
+            var collection = switcher.createCollection();
+            configuration.getSolr().setSchema(collection);
+
+            var metadataReader = UseCasesBuilder.buildMetadataReader(configuration, bootstrap.getMetricRegistry());
+            var searchIndex = UseCasesBuilder.buildSolrSearchIndex(configuration, metadataReader, bootstrap.getMetricRegistry());
+            var reindexer = UseCasesBuilder.buildReindexer(configuration, hibernateBundle, bootstrap.getMetricRegistry(), searchIndex);
+
+            log.info("Configured services, reindexing into Solr collection {}", collection);
+
+            try {
+                var start = OffsetDateTime.now();
+                checkComplete(reindexer.reindex(ReindexScope.all(), false));
+
+                var expectedAtLeast = reindexer.countOcflObjectVersions();
+                var catchUpStart = OffsetDateTime.now();
+                checkComplete(reindexer.reindex(ReindexScope.builder().since(start).build(), false));
+                var expectedAtMost = reindexer.countOcflObjectVersions();
+
+                var previous = switcher.switchIfComplete(collection, expectedAtLeast, expectedAtMost);
+                checkComplete(reindexer.reindex(ReindexScope.builder().since(catchUpStart).build(), false));
+                log.info("Reindexed into {}; roll back to {} with the rollback-reindex command", collection, previous.orElse("nothing"));
+            }
+            finally {
+                searchIndex.stop();
+            }
+        }
+    }
+
+    private void checkComplete(ReindexResult result) {
+        if (!result.isComplete()) {
+            throw new SearchIndexException(String.format("Reindex incomplete: %d of %d OCFL object versions failed, documents visible: %s",
+                result.getFailed(), result.getOcflObjectVersions(), result.isVisible()), null);
         }
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.cli;
+
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.solr.SolrAliasSwitcher;
+import nl.knaw.dans.catalog.core.solr.SolrCollectionsImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RollbackReindexCommand extends ConfiguredCommand<DdVaultCatalogConfiguration> {
+    private static final Logger log = LoggerFactory.getLogger(RollbackReindexCommand.class);
+
+    public RollbackReindexCommand() {
+        super("rollback-reindex", "Points the Solr alias back to the collection it pointed to before the last reindex --blue-green");
+    }
+
+    @Override
+    protected void run(Bootstrap<DdVaultCatalogConfiguration> bootstrap, Namespace namespace, DdVaultCatalogConfiguration configuration) throws Exception {
+        try (var collections = new SolrCollectionsImpl(configuration.getSolr())) {
+            var switcher = new SolrAliasSwitcher(collections);
+            var current = switcher.getCurrentCollection();
+            var previous = switcher.rollback();
+
+            // changes made since the switch are only in the collection that was rolled back from
+            log.info("Switched Solr alias {} back from {} to {}; reindex with --since the time of the switch to add the changes made since then",
+                switcher.getAlias(), current.orElse("nothing"), previous);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionSnapshot;
+import nl.knaw.dans.catalog.core.domain.TarSnapshot;
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// keeps the results of the lookups of OCFL object versions and TARs, so that repeated lookups need no transaction.
+// Results that were not found are kept as well. The write paths of UseCases remove all results that a change may
+// affect once their transaction has committed, so that a lookup before that cannot keep the old state. Changes made
+// outside this service are seen after expireAfterWrite.
+public class CatalogReadCache {
+    private final AfterCommitExecutor afterCommitExecutor;
+    // null when caching is disabled
+    private final Cache<OcflObjectVersionId, Optional<OcflObjectVersionSnapshot>> ocflObjectVersions;
+    private final Cache<String, List<OcflObjectVersionSnapshot>> ocflObjectVersionsByBagId;
+    private final Cache<String, List<OcflObjectVersionSnapshot>> ocflObjectVersionsByNbn;
+    private final Cache<String, Optional<TarSnapshot>> tars;
+
+    public CatalogReadCache() {
+        this.afterCommitExecutor = null;
+        this.ocflObjectVersions = null;
+        this.ocflObjectVersionsByBagId = null;
+        this.ocflObjectVersionsByNbn = null;
+        this.tars = null;
+    }
+
+    public CatalogReadCache(DdVaultCatalogConfiguration.ReadCacheConfig readCacheConfig, MetricRegistry metricRegistry, AfterCommitExecutor afterCommitExecutor) {
+        this.afterCommitExecutor = afterCommitExecutor;
+
+        if (readCacheConfig.getMaximumSize() > 0) {
+            this.ocflObjectVersions = buildCache(readCacheConfig, metricRegistry, "ocfl-object-versions");
+            this.ocflObjectVersionsByBagId = buildCache(readCacheConfig, metricRegistry, "ocfl-object-versions-by-bag-id");
+            this.ocflObjectVersionsByNbn = buildCache(readCacheConfig, metricRegistry, "ocfl-object-versions-by-nbn");
+            this.tars = buildCache(readCacheConfig, metricRegistry, "tars");
+        }
+        else {
+            this.ocflObjectVersions = null;
+            this.ocflObjectVersionsByBagId = null;
+            this.ocflObjectVersionsByNbn = null;
+            this.tars = null;
+        }
+    }
+
+    private static <K, V> Cache<K, V> buildCache(DdVaultCatalogConfiguration.ReadCacheConfig readCacheConfig, MetricRegistry metricRegistry, String name) {
+        var cache = Caffeine.newBuilder()
+            .maximumSize(readCacheConfig.getMaximumSize())
+            .expireAfterWrite(readCacheConfig.getExpireAfterWrite().toMilliseconds(), TimeUnit.MILLISECONDS)
+            .recordStats()
+            .<K, V> build();
+
+        metricRegistry.gauge(MetricRegistry.name(CatalogReadCache.class, name, "hit-ratio"), () -> (Gauge<Double>) () -> cache.stats().hitRate());
+        metricRegistry.gauge(MetricRegistry.name(CatalogReadCache.class, name, "evictions"), () -> (Gauge<Long>) () -> cache.stats().evictionCount());
+        metricRegistry.gauge(MetricRegistry.name(CatalogReadCache.class, name, "size"), () -> (Gauge<Long>) cache::estimatedSize);
+        return cache;
+    }
+
+    public Optional<OcflObjectVersionSnapshot> getOcflObjectVersion(OcflObjectVersionId id, Function<OcflObjectVersionId, Optional<OcflObjectVersionSnapshot>> loader) {
+        return get(ocflObjectVersions, id, loader);
+    }
+
+    public List<OcflObjectVersionSnapshot> getOcflObjectVersionsByBagId(String bagId, Function<String, List<OcflObjectVersionSnapshot>> loader) {
+        return get(ocflObjectVersionsByBagId, bagId, loader);
+    }
+
+    public List<OcflObjectVersionSnapshot> getOcflObjectVersionsByNbn(String nbn, Function<String, List<OcflObjectVersionSnapshot>> loader) {
+        return get(ocflObjectVersionsByNbn, nbn, loader);
+    }
+
+    public Optional<TarSnapshot> getTar(String tarUuid, Function<String, Optional<TarSnapshot>> loader) {
+        return get(tars, tarUuid, loader);
+    }
+
+    // to be called with the OCFL object versions as they were before and after the change, as their NBN or TAR may have
+    // changed; this also removes the TARs they are in, as those contain them. The keys are taken right away, and the
+    // results are removed after the commit.
+    public void invalidateOcflObjectVersions(Collection<OcflObjectVersion> versions) {
+        if (ocflObjectVersions == null) {
+            return;
+        }
+
+        var ids = versions.stream()
+            .map(OcflObjectVersion::getId)
+            .collect(Collectors.toSet());
+        var bagIds = versions.stream()
+            .map(OcflObjectVersion::getBagId)
+            .collect(Collectors.toSet());
+        var nbns = versions.stream()
+            .map(OcflObjectVersion::getNbn)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        var tarUuids = versions.stream()
+            .filter(version -> version.getTar() != null)
+            .map(version -> version.getTar().getTarUuid())
+            .collect(Collectors.toSet());
+
+        afterCommitExecutor.execute(() -> {
+            ocflObjectVersions.invalidateAll(ids);
+            ocflObjectVersionsByBagId.invalidateAll(bagIds);
+            ocflObjectVersionsByNbn.invalidateAll(nbns);
+            tars.invalidateAll(tarUuids);
+        });
+    }
+
+    public void invalidateTar(String tarUuid) {
+        if (tars != null) {
+            afterCommitExecutor.execute(() -> tars.invalidate(tarUuid));
+        }
+    }
+
+    // the loader runs while the key is locked, so that an invalidation of the key after a commit waits for it instead of
+    // being overwritten by the state it read before the commit
+    private static <K, V> V get(Cache<K, V> cache, K key, Function<K, V> loader) {
+        if (cache == null) {
+            return loader.apply(key);
+        }
+
+        return cache.get(key, loader);
+    }
+}
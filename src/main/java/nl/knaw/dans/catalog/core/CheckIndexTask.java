@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import io.dropwizard.servlets.tasks.Task;
+import nl.knaw.dans.catalog.core.solr.SolrIndexChecker;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+// POST /tasks/check-index[?repair=true] on the admin port; the same check as the check-index command, with the repairs
+// going through the outbox
+public class CheckIndexTask extends Task {
+    private final SolrIndexChecker solrIndexChecker;
+
+    public CheckIndexTask(SolrIndexChecker solrIndexChecker) {
+        super("check-index");
+        this.solrIndexChecker = solrIndexChecker;
+    }
+
+    @Override
+    public void execute(Map<String, List<String>> parameters, PrintWriter output) {
+        var repair = parameters.getOrDefault("repair", List.of()).contains("true");
+        var result = solrIndexChecker.check(repair);
+
+        output.printf("OCFL object versions: %d%n", result.getOcflObjectVersions());
+        output.printf("TARs: %d%n", result.getTars());
+        output.printf("Documents: %d%n", result.getDocuments());
+        output.printf("Missing: %d%n", result.getMissing());
+        output.printf("Stale: %d%n", result.getStale());
+        output.printf("Orphaned: %d%n", result.getOrphaned());
+        output.printf("Repaired: %s%n", result.isRepaired());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import nl.knaw.dans.catalog.db.IndexOutboxEntry;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface IndexOutboxRepository {
+
+    void saveAll(Collection<IndexOutboxEntry> entries);
+
+    // entries whose next attempt is due, oldest first
+    List<IndexOutboxEntry> findDue(OffsetDateTime now, int limit);
+
+    // all entries for these OCFL object versions (by bag ID) and TARs, whether they are due or not
+    List<IndexOutboxEntry> findAllFor(Collection<String> bagIds, Collection<String> tarUuids);
+
+    void deleteAll(Collection<IndexOutboxEntry> entries);
+
+    long count();
+
+    Optional<OffsetDateTime> findOldestCreated();
+}
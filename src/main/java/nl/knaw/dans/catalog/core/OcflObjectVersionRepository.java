@@ -16,11 +16,14 @@
 package nl.knaw.dans.catalog.core;
 
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
+import nl.knaw.dans.catalog.core.exception.OcflObjectVersionAlreadyExistsException;
 import nl.knaw.dans.catalog.core.exception.OcflObjectVersionNotFoundException;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface OcflObjectVersionRepository {
@@ -29,13 +32,29 @@ public interface OcflObjectVersionRepository {
 
     List<OcflObjectVersion> findAllByBagId(String bagId);
 
-    List<OcflObjectVersion> findAll();
-
     List<OcflObjectVersion> findAllBySwordToken(String swordToken);
 
-    OcflObjectVersion save(OcflObjectVersion ocflObjectVersion);
+    OcflObjectVersion save(OcflObjectVersion ocflObjectVersion) throws OcflObjectVersionAlreadyExistsException;
+
+    List<OcflObjectVersion> saveAll(Collection<OcflObjectVersion> ocflObjectVersions);
+
+    // like saveAll(Collection), with the stored versions among them by id, as the caller already looked them up
+    List<OcflObjectVersion> saveAll(Collection<OcflObjectVersion> ocflObjectVersions, Map<OcflObjectVersionId, OcflObjectVersion> existing);
 
     List<OcflObjectVersion> findAll(Collection<OcflObjectVersionId> versions) throws OcflObjectVersionNotFoundException;
 
+    // ids that do not exist are ignored, unlike findAll(Collection)
+    List<OcflObjectVersion> findAllByIds(Collection<OcflObjectVersionId> versions);
+
     List<OcflObjectVersion> findByNbn(String nbn);
+
+    long count();
+
+    // at most limit versions in the scope that come after the given id (null for the first page), ordered by id, with
+    // their TAR and its parts loaded; with a since, a version is in scope if it or its TAR changed
+    List<OcflObjectVersion> findPage(ReindexScope scope, OcflObjectVersionId after, int limit);
+
+    // at most limit versions with metadata but without stored search fields that come after the given id (null for the
+    // first page), ordered by id
+    List<OcflObjectVersion> findWithoutSearchFields(OcflObjectVersionId after, int limit);
 }
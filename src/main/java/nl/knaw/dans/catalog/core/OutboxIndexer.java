@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.db.IndexOutboxEntry;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class OutboxIndexer {
+    private final IndexOutboxRepository indexOutboxRepository;
+    private final OcflObjectVersionRepository ocflObjectVersionRepository;
+    private final TarRepository tarRepository;
+    private final SearchIndex searchIndex;
+    private final int batchSize;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final Meter indexed;
+    private final Meter failed;
+    private final Meter coalesced;
+
+    public OutboxIndexer(IndexOutboxRepository indexOutboxRepository, OcflObjectVersionRepository ocflObjectVersionRepository, TarRepository tarRepository, SearchIndex searchIndex,
+        DdVaultCatalogConfiguration.OutboxConfig outboxConfig, MetricRegistry metricRegistry) {
+        this.indexOutboxRepository = indexOutboxRepository;
+        this.ocflObjectVersionRepository = ocflObjectVersionRepository;
+        this.tarRepository = tarRepository;
+        this.searchIndex = searchIndex;
+        this.batchSize = outboxConfig.getBatchSize();
+        this.initialBackoff = Duration.ofMillis(outboxConfig.getInitialBackoff().toMilliseconds());
+        this.maxBackoff = Duration.ofMillis(outboxConfig.getMaxBackoff().toMilliseconds());
+
+        metricRegistry.gauge(MetricRegistry.name(OutboxIndexer.class, "size"), () -> (Gauge<Long>) size::get);
+        metricRegistry.gauge(MetricRegistry.name(OutboxIndexer.class, "lag-seconds"), () -> (Gauge<Long>) lagSeconds::get);
+        this.indexed = metricRegistry.meter(MetricRegistry.name(OutboxIndexer.class, "indexed"));
+        this.failed = metricRegistry.meter(MetricRegistry.name(OutboxIndexer.class, "failed"));
+        this.coalesced = metricRegistry.meter(MetricRegistry.name(OutboxIndexer.class, "coalesced"));
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // sends the entries that are due to the search index and returns how many there were; the current state of each
+    // OCFL object version or TAR is indexed, so an entry that is delivered more than once does no harm
+    @UnitOfWork
+    public int processBatch() {
+        var now = OffsetDateTime.now();
+        var entries = indexOutboxRepository.findDue(now, batchSize);
+        var versionEntries = new LinkedHashMap<OcflObjectVersionId, List<IndexOutboxEntry>>();
+        var membershipEntries = new LinkedHashMap<OcflObjectVersionId, List<IndexOutboxEntry>>();
+        var tarEntries = new LinkedHashMap<String, List<IndexOutboxEntry>>();
+
+        for (var entry : entries) {
+            if (entry.getType() == IndexOutboxEntry.Type.TAR) {
+                tarEntries.computeIfAbsent(entry.getTarUuid(), k -> new ArrayList<>()).add(entry);
+            }
+            else if (entry.getType() == IndexOutboxEntry.Type.TAR_MEMBERSHIP) {
+                membershipEntries.computeIfAbsent(new OcflObjectVersionId(entry.getBagId(), entry.getObjectVersion()), k -> new ArrayList<>()).add(entry);
+            }
+            else {
+                versionEntries.computeIfAbsent(new OcflObjectVersionId(entry.getBagId(), entry.getObjectVersion()), k -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        var pending = coalesce(entries, versionEntries, membershipEntries, tarEntries);
+
+        // the full document of a version also has its TAR fields
+        for (var id : versionEntries.keySet()) {
+            var membershipEntry = membershipEntries.remove(id);
+
+            if (membershipEntry != null) {
+                versionEntries.get(id).addAll(membershipEntry);
+            }
+        }
+
+        var done = new ArrayList<IndexOutboxEntry>();
+
+        try {
+            if (!versionEntries.isEmpty()) {
+                searchIndex.indexOcflObjectVersions(ocflObjectVersionRepository.findAllByIds(versionEntries.keySet()));
+            }
+
+            if (!membershipEntries.isEmpty()) {
+                searchIndex.indexTarMembership(ocflObjectVersionRepository.findAllByIds(membershipEntries.keySet()));
+            }
+
+            for (var tarUuid : tarEntries.keySet()) {
+                tarRepository.getTarById(tarUuid).ifPresent(searchIndex::indexTar);
+            }
+
+            searchIndex.flush();
+            done.addAll(entries);
+            done.addAll(pending);
+        }
+        catch (RuntimeException e) {
+            log.warn("Indexing {} outbox entries failed, retrying them one by one", entries.size(), e);
+
+            // so that a single version or TAR that cannot be indexed does not hold up the others
+            for (var versionEntry : versionEntries.entrySet()) {
+                var id = versionEntry.getKey();
+
+                try {
+                    ocflObjectVersionRepository.findByBagIdAndVersion(id.getBagId(), id.getObjectVersion())
+                        .ifPresent(searchIndex::indexOcflObjectVersion);
+                    searchIndex.flush();
+                    done.addAll(versionEntry.getValue());
+                }
+                catch (RuntimeException ex) {
+                    reschedule(versionEntry.getValue(), now, ex);
+                }
+            }
+
+            for (var membershipEntry : membershipEntries.entrySet()) {
+                var id = membershipEntry.getKey();
+
+                try {
+                    ocflObjectVersionRepository.findByBagIdAndVersion(id.getBagId(), id.getObjectVersion())
+                        .ifPresent(ocflObjectVersion -> searchIndex.indexTarMembership(List.of(ocflObjectVersion)));
+                    searchIndex.flush();
+                    done.addAll(membershipEntry.getValue());
+                }
+                catch (RuntimeException ex) {
+                    reschedule(membershipEntry.getValue(), now, ex);
+                }
+            }
+
+            for (var tarEntry : tarEntries.entrySet()) {
+                try {
+                    tarRepository.getTarById(tarEntry.getKey()).ifPresent(searchIndex::indexTar);
+                    searchIndex.flush();
+                    done.addAll(tarEntry.getValue());
+                }
+                catch (RuntimeException ex) {
+                    reschedule(tarEntry.getValue(), now, ex);
+                }
+            }
+        }
+
+        indexOutboxRepository.deleteAll(done);
+        indexed.mark(done.size());
+
+        size.set(indexOutboxRepository.count());
+        lagSeconds.set(indexOutboxRepository.findOldestCreated()
+            .map(created -> Duration.between(created, now).getSeconds())
+            .orElse(0L));
+
+        return entries.size();
+    }
+
+    // adds the entries for the same OCFL object versions and TARs that are not due yet to the groups of the due entries, and
+    // returns them; these entries were committed before the current state is read, so indexing that state covers them
+    private List<IndexOutboxEntry> coalesce(List<IndexOutboxEntry> entries, Map<OcflObjectVersionId, List<IndexOutboxEntry>> versionEntries,
+        Map<OcflObjectVersionId, List<IndexOutboxEntry>> membershipEntries, Map<String, List<IndexOutboxEntry>> tarEntries) {
+        var dueIds = entries.stream().map(IndexOutboxEntry::getId).collect(Collectors.toSet());
+        var bagIds = new HashSet<String>();
+        var pending = new ArrayList<IndexOutboxEntry>();
+
+        versionEntries.keySet().forEach(id -> bagIds.add(id.getBagId()));
+        membershipEntries.keySet().forEach(id -> bagIds.add(id.getBagId()));
+
+        if (bagIds.isEmpty() && tarEntries.isEmpty()) {
+            return pending;
+        }
+
+        for (var entry : indexOutboxRepository.findAllFor(bagIds, tarEntries.keySet())) {
+            if (dueIds.contains(entry.getId())) {
+                continue;
+            }
+
+            List<IndexOutboxEntry> group;
+
+            if (entry.getType() == IndexOutboxEntry.Type.TAR) {
+                group = tarEntries.get(entry.getTarUuid());
+            }
+            else {
+                var id = new OcflObjectVersionId(entry.getBagId(), entry.getObjectVersion());
+
+                // a pending full update replaces a due update of only the TAR fields
+                if (entry.getType() == IndexOutboxEntry.Type.OCFL_OBJECT_VERSION && membershipEntries.containsKey(id)) {
+                    versionEntries.computeIfAbsent(id, k -> new ArrayList<>()).addAll(membershipEntries.remove(id));
+                }
+
+                group = versionEntries.containsKey(id) ? versionEntries.get(id) : membershipEntries.get(id);
+            }
+
+            if (group != null) {
+                group.add(entry);
+                pending.add(entry);
+            }
+        }
+
+        coalesced.mark(pending.size());
+        return pending;
+    }
+
+    private void reschedule(List<IndexOutboxEntry> entries, OffsetDateTime now, RuntimeException e) {
+        var first = entries.get(0);
+        log.error("Indexing {} {} failed after {} attempts", first.getType(), first.getType() == IndexOutboxEntry.Type.TAR ? first.getTarUuid() : first.getBagId(),
+            first.getAttempts() + 1, e);
+        failed.mark(entries.size());
+
+        for (var entry : entries) {
+            var attempts = entry.getAttempts() + 1;
+            entry.setAttempts(attempts);
+            entry.setNextAttempt(now.plus(getBackoff(attempts)));
+            entry.setLastError(e.toString());
+        }
+    }
+
+    // doubles with every attempt, up to maxBackoff
+    Duration getBackoff(int attempts) {
+        var backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+// drains the outbox; scheduled with a fixed delay, so it runs again when new entries may have arrived
+@Slf4j
+public class OutboxIndexerTask implements Runnable {
+    private final OutboxIndexer outboxIndexer;
+
+    public OutboxIndexerTask(OutboxIndexer outboxIndexer) {
+        this.outboxIndexer = outboxIndexer;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // a full batch means that more entries may be due
+            while (outboxIndexer.processBatch() == outboxIndexer.getBatchSize() && !Thread.currentThread().isInterrupted()) {
+                log.debug("Index outbox batch was full, processing next batch");
+            }
+        }
+        catch (Exception e) {
+            // an exception would stop the scheduled executor from running this task again
+            log.error("Error processing the index outbox", e);
+        }
+    }
+}
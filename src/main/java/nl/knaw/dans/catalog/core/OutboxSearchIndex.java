@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import nl.knaw.dans.catalog.core.solr.SolrIndexLayout;
+import nl.knaw.dans.catalog.db.IndexOutboxEntry;
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.Tar;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// records index updates in the outbox, in the transaction of the caller; OutboxIndexer sends them to the search index,
+// after the coalesce window, together with the other entries for the same OCFL object version or TAR
+public class OutboxSearchIndex implements SearchIndex {
+    private static final long VISIBILITY_POLL_MILLIS = 100;
+
+    private final IndexOutboxRepository indexOutboxRepository;
+    private final Duration coalesceWindow;
+    private final Duration visibilityTimeout;
+    // the search index that OutboxIndexer sends the entries to
+    private final SearchIndex target;
+    private final SolrIndexLayout layout;
+
+    public OutboxSearchIndex(IndexOutboxRepository indexOutboxRepository, DdVaultCatalogConfiguration.OutboxConfig outboxConfig, SolrIndexLayout layout, SearchIndex target) {
+        this.indexOutboxRepository = indexOutboxRepository;
+        this.coalesceWindow = Duration.ofMillis(outboxConfig.getCoalesceWindow().toMilliseconds());
+        this.visibilityTimeout = Duration.ofMillis(outboxConfig.getVisibilityTimeout().toMilliseconds());
+        this.layout = layout;
+        this.target = target;
+    }
+
+    @Override
+    public void indexTar(Tar tar) {
+        var now = OffsetDateTime.now();
+
+        indexOutboxRepository.saveAll(List.of(IndexOutboxEntry.builder()
+            .type(IndexOutboxEntry.Type.TAR)
+            .tarUuid(tar.getTarUuid())
+            .created(now)
+            .nextAttempt(now.plus(coalesceWindow))
+            .build()));
+    }
+
+    @Override
+    public void indexOcflObjectVersion(OcflObjectVersion ocflObjectVersion) {
+        indexOcflObjectVersions(List.of(ocflObjectVersion));
+    }
+
+    @Override
+    public void indexOcflObjectVersions(Collection<OcflObjectVersion> ocflObjectVersions) {
+        saveAll(IndexOutboxEntry.Type.OCFL_OBJECT_VERSION, ocflObjectVersions);
+    }
+
+    @Override
+    public void indexTarMembership(Collection<OcflObjectVersion> ocflObjectVersions) {
+        saveAll(IndexOutboxEntry.Type.TAR_MEMBERSHIP, ocflObjectVersions);
+    }
+
+    @Override
+    public boolean isTarIndexedWithItsVersions() {
+        return layout == SolrIndexLayout.EMBEDDED;
+    }
+
+    private void saveAll(IndexOutboxEntry.Type type, Collection<OcflObjectVersion> ocflObjectVersions) {
+        var now = OffsetDateTime.now();
+        var entries = ocflObjectVersions.stream()
+            .map(ocflObjectVersion -> IndexOutboxEntry.builder()
+                .type(type)
+                .bagId(ocflObjectVersion.getBagId())
+                .objectVersion(ocflObjectVersion.getObjectVersion())
+                .created(now)
+                .nextAttempt(now.plus(coalesceWindow))
+                .build())
+            .collect(Collectors.toList());
+
+        indexOutboxRepository.saveAll(entries);
+    }
+
+    @Override
+    public void flush() {
+        // the entries are written in the transaction of the caller
+    }
+
+    // waits until OutboxIndexer has sent all entries that were committed before this call, and then for a commit of the
+    // search index; so it must be called outside the unit of work that wrote the entries, once it has committed
+    @Override
+    public void waitUntilVisible() {
+        var since = OffsetDateTime.now();
+        var deadline = System.nanoTime() + visibilityTimeout.toNanos();
+
+        while (findOldestCreated().map(created -> !created.isAfter(since)).orElse(false)) {
+            if (System.nanoTime() > deadline) {
+                throw new SearchIndexException(String.format("Changes not sent to the search index within %s", visibilityTimeout), null);
+            }
+
+            try {
+                Thread.sleep(VISIBILITY_POLL_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SearchIndexException("Interrupted while waiting for the outbox", e);
+            }
+        }
+
+        target.waitUntilVisible();
+    }
+
+    @UnitOfWork(readOnly = true)
+    public Optional<OffsetDateTime> findOldestCreated() {
+        return indexOutboxRepository.findOldestCreated();
+    }
+}
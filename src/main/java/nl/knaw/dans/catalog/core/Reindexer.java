@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.ReindexResult;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.ReindexCheckpoint;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+public class Reindexer {
+    // number of versions mapped to documents by one task of a worker
+    private static final int CHUNK_SIZE = 100;
+
+    private final OcflObjectVersionRepository ocflObjectVersionRepository;
+    private final ReindexCheckpointRepository reindexCheckpointRepository;
+    private final SearchIndex searchIndex;
+    private final int pageSize;
+    private final int workers;
+    private final long progressIntervalNanos;
+    private final long checkpointIntervalNanos;
+
+    public Reindexer(OcflObjectVersionRepository ocflObjectVersionRepository, ReindexCheckpointRepository reindexCheckpointRepository, SearchIndex searchIndex,
+        DdVaultCatalogConfiguration.ReindexConfig reindexConfig) {
+        this.ocflObjectVersionRepository = ocflObjectVersionRepository;
+        this.reindexCheckpointRepository = reindexCheckpointRepository;
+        this.searchIndex = searchIndex;
+        this.pageSize = reindexConfig.getPageSize();
+        this.workers = reindexConfig.getWorkers();
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reindexConfig.getProgressInterval().toMilliseconds());
+        this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reindexConfig.getCheckpointInterval().toMilliseconds());
+    }
+
+    // reindexes the OCFL object versions in the scope, whether they are in a TAR or not; with resume, a reindex of the
+    // same scope continues after its last checkpoint
+    //
+    // the versions are read page by page, each page in its own transaction and with their TARs, so only the pages that
+    // are being indexed are in memory; documents are mapped on a pool of workers and made visible once, at the end
+    public ReindexResult reindex(ReindexScope scope, boolean resume) throws InterruptedException {
+        var name = scope.getName();
+        var checkpoint = resume ? loadCheckpoint(name) : Optional.<ReindexCheckpoint> empty();
+
+        if (checkpoint.isPresent() && checkpoint.get().isCompleted()) {
+            log.info("Reindex {} was already completed at {}", name, checkpoint.get().getUpdated());
+            return new ReindexResult(checkpoint.get().getOcflObjectVersions(), checkpoint.get().getFailed(), true);
+        }
+
+        var progress = checkpoint.map(Progress::new).orElseGet(Progress::new);
+        var last = checkpoint
+            .filter(c -> c.getLastBagId() != null)
+            .map(c -> new OcflObjectVersionId(c.getLastBagId(), c.getLastObjectVersion()))
+            .orElse(null);
+
+        if (checkpoint.isPresent()) {
+            log.info("Resuming reindex {} after {}; versions that failed before are not retried", name, last);
+        }
+
+        // when all workers are busy and the queue is full, the reading thread maps the next chunk itself, which keeps
+        // it from reading ahead
+        var executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(workers * 2),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        var pending = new ArrayList<Future<?>>();
+        var lastCheckpoint = System.nanoTime();
+
+        try {
+            for (var page = readPage(scope, last); !page.isEmpty(); page = readPage(scope, last)) {
+                for (var i = 0; i < page.size(); i += CHUNK_SIZE) {
+                    var chunk = page.subList(i, Math.min(i + CHUNK_SIZE, page.size()));
+                    pending.add(executor.submit(() -> index(chunk, progress)));
+                }
+
+                last = page.get(page.size() - 1).getId();
+                progress.reportIfDue();
+
+                if (System.nanoTime() - lastCheckpoint >= checkpointIntervalNanos) {
+                    // a failed flush ends the reindex, so that the checkpoint never moves past documents that were lost
+                    awaitAll(pending);
+                    searchIndex.flush();
+                    saveCheckpoint(name, last, progress.toResult(false));
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        var visible = true;
+
+        try {
+            searchIndex.waitUntilVisible();
+            saveCheckpoint(name, last, progress.toResult(true));
+        }
+        catch (RuntimeException e) {
+            log.error("Not all documents were accepted by the search index", e);
+            visible = false;
+        }
+
+        progress.report();
+        return progress.toResult(visible);
+    }
+
+    @UnitOfWork(readOnly = true)
+    public List<OcflObjectVersion> readPage(ReindexScope scope, OcflObjectVersionId after) {
+        return ocflObjectVersionRepository.findPage(scope, after, pageSize);
+    }
+
+    @UnitOfWork(readOnly = true)
+    public long countOcflObjectVersions() {
+        return ocflObjectVersionRepository.count();
+    }
+
+    @UnitOfWork(readOnly = true)
+    public Optional<ReindexCheckpoint> loadCheckpoint(String name) {
+        return reindexCheckpointRepository.findByName(name);
+    }
+
+    // a result that is visible marks the reindex as completed
+    @UnitOfWork
+    public void saveCheckpoint(String name, OcflObjectVersionId last, ReindexResult result) {
+        reindexCheckpointRepository.save(ReindexCheckpoint.builder()
+            .name(name)
+            .lastBagId(last == null ? null : last.getBagId())
+            .lastObjectVersion(last == null ? null : last.getObjectVersion())
+            .ocflObjectVersions(result.getOcflObjectVersions())
+            .failed(result.getFailed())
+            .completed(result.isVisible())
+            .updated(OffsetDateTime.now())
+            .build());
+    }
+
+    private void index(List<OcflObjectVersion> chunk, Progress progress) {
+        try {
+            searchIndex.indexOcflObjectVersions(chunk);
+        }
+        catch (RuntimeException e) {
+            // one by one, so that only the versions that cannot be indexed are left out
+            for (var ocflObjectVersion : chunk) {
+                try {
+                    searchIndex.indexOcflObjectVersion(ocflObjectVersion);
+                }
+                catch (RuntimeException ex) {
+                    log.error("Error reindexing OCFL object version {}", ocflObjectVersion.getId(), ex);
+                    progress.failed.incrementAndGet();
+                }
+            }
+        }
+
+        progress.versions.addAndGet(chunk.size());
+    }
+
+    private void awaitAll(List<Future<?>> futures) throws InterruptedException {
+        try {
+            for (var future : futures) {
+                future.get();
+            }
+        }
+        catch (ExecutionException e) {
+            // index handles failures itself, so this is an Error
+            throw new IllegalStateException("Reindex worker failed", e.getCause());
+        }
+
+        futures.clear();
+    }
+
+    private class Progress {
+        private final AtomicLong versions = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final long start = System.nanoTime();
+        private final long versionsAtStart;
+        private long lastReport = start;
+
+        Progress() {
+            versionsAtStart = 0;
+        }
+
+        // the counts continue from the checkpoint, the throughput is only measured for this run
+        Progress(ReindexCheckpoint checkpoint) {
+            versions.set(checkpoint.getOcflObjectVersions());
+            failed.set(checkpoint.getFailed());
+            versionsAtStart = checkpoint.getOcflObjectVersions();
+        }
+
+        ReindexResult toResult(boolean visible) {
+            return new ReindexResult(versions.get(), failed.get(), visible);
+        }
+
+        void reportIfDue() {
+            if (System.nanoTime() - lastReport >= progressIntervalNanos) {
+                report();
+            }
+        }
+
+        void report() {
+            var now = System.nanoTime();
+            var seconds = Math.max(now - start, 1) / 1e9;
+
+            log.info("Reindexed {} OCFL object versions, {} failed ({}s, {} versions/s)",
+                versions.get(), failed.get(), Math.round(seconds), Math.round((versions.get() - versionsAtStart) / seconds));
+            lastReport = now;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.domain.BackfillResult;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader;
+
+@Slf4j
+public class SearchFieldsBackfiller {
+    private final OcflObjectVersionRepository ocflObjectVersionRepository;
+    private final OcflObjectMetadataReader ocflObjectMetadataReader;
+    private final int pageSize;
+
+    // pages are as large as those of a reindex
+    public SearchFieldsBackfiller(OcflObjectVersionRepository ocflObjectVersionRepository, OcflObjectMetadataReader ocflObjectMetadataReader,
+        DdVaultCatalogConfiguration.ReindexConfig reindexConfig) {
+        this.ocflObjectVersionRepository = ocflObjectVersionRepository;
+        this.ocflObjectMetadataReader = ocflObjectMetadataReader;
+        this.pageSize = reindexConfig.getPageSize();
+    }
+
+    // stores the search fields of all OCFL object versions that were created before they were extracted at ingest;
+    // versions of which the metadata cannot be read are skipped, and are indexed from their metadata as before
+    public BackfillResult backfill() {
+        OcflObjectVersionId last = null;
+        var total = 0L;
+        var failed = 0L;
+
+        while (true) {
+            var page = backfillPage(last);
+
+            if (page.getLast() == null) {
+                break;
+            }
+
+            last = page.getLast();
+            total += page.getOcflObjectVersions();
+            failed += page.getFailed();
+
+            log.info("Stored search fields of {} OCFL object versions, {} failed", total, failed);
+        }
+
+        return new BackfillResult(last, total, failed);
+    }
+
+    // one page in its own transaction; the changed versions are written when it commits
+    @UnitOfWork
+    public BackfillResult backfillPage(OcflObjectVersionId after) {
+        var ocflObjectVersions = ocflObjectVersionRepository.findWithoutSearchFields(after, pageSize);
+        var failed = 0L;
+
+        for (var ocflObjectVersion : ocflObjectVersions) {
+            if (!ocflObjectMetadataReader.storeSearchFields(ocflObjectVersion)) {
+                failed++;
+            }
+        }
+
+        var last = ocflObjectVersions.isEmpty() ? null : ocflObjectVersions.get(ocflObjectVersions.size() - 1).getId();
+        return new BackfillResult(last, ocflObjectVersions.size(), failed);
+    }
+}
@@ -18,9 +18,28 @@ package nl.knaw.dans.catalog.core;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
 import nl.knaw.dans.catalog.db.Tar;
 
+import java.util.Collection;
+
 public interface SearchIndex {
 
     void indexTar(Tar tar);
 
     void indexOcflObjectVersion(OcflObjectVersion ocflObjectVersion);
+
+    void indexOcflObjectVersions(Collection<OcflObjectVersion> ocflObjectVersions);
+
+    // only updates the TAR fields of the versions, for when they joined or left a TAR but their metadata did not change
+    void indexTarMembership(Collection<OcflObjectVersion> ocflObjectVersions);
+
+    // whether indexTar also sets the TAR fields of the documents of the versions in the TAR, so that versions that join
+    // it need no indexTarMembership
+    boolean isTarIndexedWithItsVersions();
+
+    // blocks until everything indexed so far is visible to searches, throws SearchIndexException if that fails or takes
+    // too long
+    void waitUntilVisible();
+
+    // blocks until everything indexed so far has been accepted by the search index, throws SearchIndexException if
+    // any of it failed
+    void flush();
 }
@@ -27,4 +27,7 @@ public interface TarRepository {
     Tar save(Tar tar);
 
     List<Tar> findAll();
+
+    // the TARs after the one with the given uuid (null for the first page), by uuid, with their parts
+    List<Tar> findPage(String after, int limit);
 }
@@ -17,18 +17,26 @@ package nl.knaw.dans.catalog.core;
 
 import io.dropwizard.hibernate.UnitOfWork;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionBulkItem;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionBulkResult;
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionParameters;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionSnapshot;
 import nl.knaw.dans.catalog.core.domain.TarParameters;
+import nl.knaw.dans.catalog.core.domain.TarSnapshot;
 import nl.knaw.dans.catalog.core.exception.*;
+import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
 import nl.knaw.dans.catalog.db.Tar;
 import nl.knaw.dans.catalog.db.mappers.OcflObjectVersionMapper;
 import nl.knaw.dans.catalog.db.mappers.TarMapper;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -36,19 +44,30 @@ public class UseCases {
     private final OcflObjectVersionRepository ocflObjectVersionRepository;
     private final TarRepository tarRepository;
     private final SearchIndex searchIndex;
+    private final OcflObjectMetadataReader ocflObjectMetadataReader;
+    private final CatalogReadCache readCache;
 
     private final TarMapper tarMapper = TarMapper.INSTANCE;
     private final OcflObjectVersionMapper ocflObjectVersionMapper = OcflObjectVersionMapper.INSTANCE;
 
-    public UseCases(OcflObjectVersionRepository ocflObjectVersionRepository, TarRepository tarRepository, SearchIndex searchIndex) {
+    public UseCases(OcflObjectVersionRepository ocflObjectVersionRepository, TarRepository tarRepository, SearchIndex searchIndex, OcflObjectMetadataReader ocflObjectMetadataReader,
+        CatalogReadCache readCache) {
         this.ocflObjectVersionRepository = ocflObjectVersionRepository;
         this.tarRepository = tarRepository;
         this.searchIndex = searchIndex;
+        this.ocflObjectMetadataReader = ocflObjectMetadataReader;
+        this.readCache = readCache;
     }
 
-    @UnitOfWork
-    public Collection<OcflObjectVersion> findOcflObjectVersionsByBagId(String bagId) {
-        return ocflObjectVersionRepository.findAllByBagId(bagId);
+    // the cached lookups open a transaction only when the result is not in the cache; the load methods are public
+    // because they must be called through the proxy that opens it
+    public Collection<OcflObjectVersionSnapshot> findOcflObjectVersionsByBagId(String bagId) {
+        return readCache.getOcflObjectVersionsByBagId(bagId, this::loadOcflObjectVersionsByBagId);
+    }
+
+    @UnitOfWork(readOnly = true)
+    public List<OcflObjectVersionSnapshot> loadOcflObjectVersionsByBagId(String bagId) {
+        return toSnapshots(ocflObjectVersionRepository.findAllByBagId(bagId));
     }
 
     @UnitOfWork
@@ -56,9 +75,8 @@ public class UseCases {
         return ocflObjectVersionRepository.findAllBySwordToken(swordToken);
     }
 
-    @UnitOfWork
-    public List<OcflObjectVersion> findOcflObjectVersionsByNbn(String nbn) throws OcflObjectVersionNotFoundException {
-        var results = ocflObjectVersionRepository.findByNbn(nbn);
+    public List<OcflObjectVersionSnapshot> findOcflObjectVersionsByNbn(String nbn) throws OcflObjectVersionNotFoundException {
+        var results = readCache.getOcflObjectVersionsByNbn(nbn, this::loadOcflObjectVersionsByNbn);
 
         log.info("Found {} OCFL object versions for NBN {}", results.size(), nbn);
 
@@ -71,30 +89,116 @@ public class UseCases {
         return results;
     }
 
-    @UnitOfWork
-    public Optional<OcflObjectVersion> findOcflObjectVersionByBagIdAndVersion(String bagId, Integer versionNumber) {
-        return ocflObjectVersionRepository.findByBagIdAndVersion(bagId, versionNumber);
+    @UnitOfWork(readOnly = true)
+    public List<OcflObjectVersionSnapshot> loadOcflObjectVersionsByNbn(String nbn) {
+        return toSnapshots(ocflObjectVersionRepository.findByNbn(nbn));
+    }
+
+    // for clients that search for their changes right after making them; to be called once the write has committed, and
+    // returns false if the changes are not visible yet within the timeout of the search index
+    public boolean waitUntilVisible() {
+        try {
+            searchIndex.waitUntilVisible();
+            return true;
+        }
+        catch (SearchIndexException e) {
+            log.warn("Changes not visible to searches yet: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public Optional<OcflObjectVersionSnapshot> findOcflObjectVersionByBagIdAndVersion(String bagId, Integer versionNumber) {
+        return readCache.getOcflObjectVersion(new OcflObjectVersionId(bagId, versionNumber), this::loadOcflObjectVersion);
+    }
+
+    @UnitOfWork(readOnly = true)
+    public Optional<OcflObjectVersionSnapshot> loadOcflObjectVersion(OcflObjectVersionId id) {
+        return ocflObjectVersionRepository.findByBagIdAndVersion(id.getBagId(), id.getObjectVersion())
+            .map(ocflObjectVersionMapper::convert);
     }
 
     @UnitOfWork
     public OcflObjectVersion createOcflObjectVersion(OcflObjectVersionId id, OcflObjectVersionParameters parameters) throws OcflObjectVersionAlreadyExistsException {
-        // in case of skeletonRecord, allow writing
-        var existingOcflObjectVersion = ocflObjectVersionRepository.findByBagIdAndVersion(id.getBagId(), id.getObjectVersion())
-            .filter(ocflObjectVersion -> !ocflObjectVersion.isSkeletonRecord());
+        var existingOcflObjectVersion = ocflObjectVersionRepository.findByBagIdAndVersion(id.getBagId(), id.getObjectVersion());
 
-        if (existingOcflObjectVersion.isPresent()) {
+        // in case of skeletonRecord, allow writing
+        if (existingOcflObjectVersion.filter(ocflObjectVersion -> !ocflObjectVersion.isSkeletonRecord()).isPresent()) {
             throw new OcflObjectVersionAlreadyExistsException(id.getBagId(), id.getObjectVersion());
         }
 
         var ocflObjectVersion = ocflObjectVersionMapper.convert(parameters);
         ocflObjectVersion.setObjectVersion(id.getObjectVersion());
         ocflObjectVersion.setBagId(id.getBagId());
+        // extracted once, so that indexing and reindexing need not read the metadata again
+        ocflObjectMetadataReader.storeSearchFields(ocflObjectVersion);
 
         log.info("Indexing OCFL object version in search index: {}", ocflObjectVersion.getId());
         searchIndex.indexOcflObjectVersion(ocflObjectVersion);
 
+        // a skeleton record that is replaced may have had another NBN; saving overwrites it, so its keys are taken first
+        existingOcflObjectVersion.ifPresent(existing -> readCache.invalidateOcflObjectVersions(List.of(existing)));
+
         log.info("Creating new OCFL object version with bagId {} and version {}: {}", id.getBagId(), id.getObjectVersion(), ocflObjectVersion);
-        return ocflObjectVersionRepository.save(ocflObjectVersion);
+        var result = ocflObjectVersionRepository.save(ocflObjectVersion);
+        readCache.invalidateOcflObjectVersions(List.of(result));
+
+        return result;
+    }
+
+    @UnitOfWork
+    public List<OcflObjectVersionBulkResult> createOcflObjectVersions(List<OcflObjectVersionBulkItem> items) {
+        var ids = items.stream()
+            .map(OcflObjectVersionBulkItem::getId)
+            .collect(Collectors.toList());
+
+        var existingOcflObjectVersions = ocflObjectVersionRepository.findAllByIds(ids);
+        var existing = existingOcflObjectVersions.stream()
+            .collect(Collectors.toMap(OcflObjectVersion::getId, Function.identity()));
+
+        // in case of skeletonRecord, allow writing
+        var existingIds = existingOcflObjectVersions.stream()
+            .filter(ocflObjectVersion -> !ocflObjectVersion.isSkeletonRecord())
+            .map(OcflObjectVersion::getId)
+            .collect(Collectors.toSet());
+
+        var seenIds = new HashSet<OcflObjectVersionId>();
+        var ocflObjectVersions = new ArrayList<OcflObjectVersion>();
+        var results = new ArrayList<OcflObjectVersionBulkResult>();
+
+        for (var item : items) {
+            var id = item.getId();
+
+            if (existingIds.contains(id) || !seenIds.add(id)) {
+                results.add(OcflObjectVersionBulkResult.builder()
+                    .id(id)
+                    .status(OcflObjectVersionBulkResult.Status.CONFLICT)
+                    .message(new OcflObjectVersionAlreadyExistsException(id.getBagId(), id.getObjectVersion()).getMessage())
+                    .build());
+                continue;
+            }
+
+            var ocflObjectVersion = ocflObjectVersionMapper.convert(item.getParameters());
+            ocflObjectVersion.setObjectVersion(id.getObjectVersion());
+            ocflObjectVersion.setBagId(id.getBagId());
+            ocflObjectMetadataReader.storeSearchFields(ocflObjectVersion);
+            ocflObjectVersions.add(ocflObjectVersion);
+
+            results.add(OcflObjectVersionBulkResult.builder()
+                .id(id)
+                .status(OcflObjectVersionBulkResult.Status.CREATED)
+                .build());
+        }
+
+        log.info("Creating {} new OCFL object versions out of {} requested", ocflObjectVersions.size(), items.size());
+        readCache.invalidateOcflObjectVersions(existingOcflObjectVersions);
+        // the existing versions were looked up above, so they are not looked up again
+        var saved = ocflObjectVersionRepository.saveAll(ocflObjectVersions, existing);
+        readCache.invalidateOcflObjectVersions(saved);
+
+        log.info("Indexing {} OCFL object versions in search index", saved.size());
+        searchIndex.indexOcflObjectVersions(saved);
+
+        return results;
     }
 
     @UnitOfWork
@@ -128,15 +232,27 @@ public class UseCases {
         log.info("Saving new TAR {}", tar);
         var result = tarRepository.save(tar);
 
+        readCache.invalidateTar(id);
+        readCache.invalidateOcflObjectVersions(ocflObjectVersions);
+
         log.info("Indexing TAR in search index: {}", tar);
         searchIndex.indexTar(result);
 
+        // with the JOINED layout the documents of the versions refer to their TAR, so they must be updated as well
+        if (!searchIndex.isTarIndexedWithItsVersions()) {
+            searchIndex.indexTarMembership(ocflObjectVersions);
+        }
+
         return result;
     }
 
-    @UnitOfWork
-    public Optional<Tar> findTarById(String id) {
-        return tarRepository.getTarById(id);
+    public Optional<TarSnapshot> findTarById(String id) {
+        return readCache.getTar(id, this::loadTar);
+    }
+
+    @UnitOfWork(readOnly = true)
+    public Optional<TarSnapshot> loadTar(String id) {
+        return tarRepository.getTarById(id).map(tarMapper::convert);
     }
 
     @UnitOfWork
@@ -159,6 +275,9 @@ public class UseCases {
             }
         }
 
+        var previousOcflObjectVersions = tar.getOcflObjectVersions();
+        var changedOcflObjectVersions = getChangedOcflObjectVersions(previousOcflObjectVersions, ocflObjectVersions);
+
         var parts = params.getTarParts().stream().map(tarMapper::convert).collect(Collectors.toList());
         tar.setArchivalDate(params.getArchivalDate());
         tar.setVaultPath(params.getVaultPath());
@@ -168,23 +287,46 @@ public class UseCases {
         log.info("Updating TAR {}", tar);
         var result = tarRepository.save(tar);
 
+        // the versions that stay in the TAR are affected as well, as they show its archival date
+        readCache.invalidateTar(id);
+        readCache.invalidateOcflObjectVersions(previousOcflObjectVersions);
+        readCache.invalidateOcflObjectVersions(ocflObjectVersions);
+
         log.info("Reindexing TAR in search index: {}", tar);
         searchIndex.indexTar(result);
 
+        // versions that left the TAR must lose their TAR fields, and versions that joined it must get them
+        if (!changedOcflObjectVersions.isEmpty()) {
+            log.info("Reindexing {} OCFL object versions that were added to or removed from TAR {}", changedOcflObjectVersions.size(), id);
+            searchIndex.indexTarMembership(changedOcflObjectVersions);
+        }
+
         return result;
     }
 
+    private List<OcflObjectVersionSnapshot> toSnapshots(List<OcflObjectVersion> ocflObjectVersions) {
+        return ocflObjectVersions.stream()
+            .map(ocflObjectVersionMapper::convert)
+            .collect(Collectors.toUnmodifiableList());
+    }
 
-    @UnitOfWork
-    public void reindexAllTars() {
-        var tars = tarRepository.findAll();
+    private List<OcflObjectVersion> getChangedOcflObjectVersions(List<OcflObjectVersion> before, List<OcflObjectVersion> after) {
+        var idsBefore = before.stream().map(OcflObjectVersion::getId).collect(Collectors.toSet());
+        var idsAfter = after.stream().map(OcflObjectVersion::getId).collect(Collectors.toSet());
+        var changed = new ArrayList<OcflObjectVersion>();
 
-        log.info("Reindexing {} archives", tars.size());
+        for (var version : before) {
+            if (!idsAfter.contains(version.getId())) {
+                changed.add(version);
+            }
+        }
 
-        for (var tar : tars) {
-            log.info("Reindexing TAR {}", tar.getTarUuid());
-            searchIndex.indexTar(tar);
+        for (var version : after) {
+            if (!idsBefore.contains(version.getId())) {
+                changed.add(version);
+            }
         }
-    }
 
+        return changed;
+    }
 }
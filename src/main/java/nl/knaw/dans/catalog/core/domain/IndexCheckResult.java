@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.domain;
+
+import lombok.Value;
+
+@Value
+public class IndexCheckResult {
+    long ocflObjectVersions;
+    // only checked with the JOINED layout, in which the TARs have documents of their own
+    long tars;
+    long documents;
+    // in the database, but not in the index
+    long missing;
+    // in both, but the document in the index differs from the one the OCFL object version maps to
+    long stale;
+    // in the index, but not in the database
+    long orphaned;
+    boolean repaired;
+
+    public boolean isConsistent() {
+        return missing == 0 && stale == 0 && orphaned == 0;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.OffsetDateTime;
+
+// an OCFL object version as read from the database, detached from it so that it can be cached and shared between requests
+@Value
+@Builder
+public class OcflObjectVersionSnapshot {
+    String bagId;
+    Integer objectVersion;
+    String swordToken;
+    String nbn;
+    String dataSupplier;
+    String dataversePid;
+    String dataversePidVersion;
+    String otherId;
+    String otherIdVersion;
+    String ocflObjectPath;
+    String metadata;
+    String filePidToLocalPath;
+    OffsetDateTime exportTimestamp;
+    boolean skeletonRecord;
+    String tarUuid;
+    OffsetDateTime tarArchivalDate;
+
+    public OcflObjectVersionId getId() {
+        return new OcflObjectVersionId(bagId, objectVersion);
+    }
+}
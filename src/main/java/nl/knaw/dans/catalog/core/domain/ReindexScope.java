@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.domain;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.OffsetDateTime;
+
+// what a reindex covers: the OCFL object versions with bag ids from (inclusive) to (exclusive) and, if since is given,
+// only those that were changed since then; null means unbounded
+@Value
+@Builder
+public class ReindexScope {
+    String from;
+    String to;
+    OffsetDateTime since;
+
+    public static ReindexScope all() {
+        return ReindexScope.builder().build();
+    }
+
+    // identifies the checkpoint of a reindex; a reindex can only be resumed with the same scope
+    public String getName() {
+        var name = String.format("versions[%s,%s)", from == null ? "" : from, to == null ? "" : to);
+        return since == null ? name : name + " since " + since;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// remote JSON-LD contexts that are shipped with the application, so that the ones all our metadata refers to are not
+// looked up while indexing
+class BundledContexts {
+    private static final Map<String, String> RESOURCES = Map.of(
+        "https://w3id.org/ore/context", "/jsonld/ore-context.jsonld",
+        "http://w3id.org/ore/context", "/jsonld/ore-context.jsonld"
+    );
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, JsonNode> definitions = new ConcurrentHashMap<>();
+
+    BundledContexts(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // the context definition published at the url; null if it is not bundled
+    JsonNode getDefinition(String url) {
+        var resource = RESOURCES.get(url);
+
+        if (resource == null) {
+            return null;
+        }
+
+        return definitions.computeIfAbsent(resource, this::load);
+    }
+
+    // replaces every reference to a bundled remote context in the document by its definition; other remote contexts
+    // are left for Jena to look up
+    void inline(JsonNode node) {
+        if (node instanceof ObjectNode) {
+            var object = (ObjectNode) node;
+            var context = object.get("@context");
+
+            if (context != null) {
+                object.set("@context", inlineContext(context));
+            }
+
+            object.fields().forEachRemaining(field -> {
+                if (!"@context".equals(field.getKey())) {
+                    inline(field.getValue());
+                }
+            });
+        }
+        else if (node instanceof ArrayNode) {
+            node.forEach(this::inline);
+        }
+    }
+
+    private JsonNode inlineContext(JsonNode context) {
+        if (context.isTextual()) {
+            var definition = getDefinition(context.textValue());
+            return definition == null ? context : definition;
+        }
+
+        if (context.isArray()) {
+            var result = objectMapper.createArrayNode();
+            context.forEach(item -> result.add(inlineContext(item)));
+            return result;
+        }
+
+        return context;
+    }
+
+    private JsonNode load(String resource) {
+        try (var input = getClass().getResourceAsStream(resource)) {
+            if (input == null) {
+                throw new IllegalStateException("Missing bundled context " + resource);
+            }
+
+            var definition = objectMapper.readTree(input).get("@context");
+
+            if (definition == null) {
+                throw new IllegalStateException("Bundled context " + resource + " has no @context");
+            }
+
+            return definition;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Cannot read bundled context " + resource, e);
+        }
+    }
+}
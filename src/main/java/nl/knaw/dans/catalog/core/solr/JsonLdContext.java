@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// the term definitions of a JSON-LD @context, limited to what the streaming extractor supports: prefixes, terms with an
+// @id and an optional @type, and keyword aliases
+class JsonLdContext {
+    static final JsonLdContext EMPTY = new JsonLdContext(Map.of(), Map.of());
+
+    private static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+    private static final String GEN_DELIMS = ":/?#[]@";
+
+    private final Map<String, Term> terms;
+    private final Map<String, String> aliases;
+
+    private JsonLdContext(Map<String, Term> terms, Map<String, String> aliases) {
+        this.terms = terms;
+        this.aliases = aliases;
+    }
+
+    static class Term {
+        private final String iri;
+        // string values are IRIs, not literals
+        private final boolean reference;
+        // a datatype other than xsd:string, which may change how Jena presents the value
+        private final boolean typed;
+        // may be used as the prefix of a compact IRI
+        private final boolean prefix;
+
+        Term(String iri, boolean reference, boolean typed, boolean prefix) {
+            this.iri = iri;
+            this.reference = reference;
+            this.typed = typed;
+            this.prefix = prefix;
+        }
+
+        boolean isReference() {
+            return reference;
+        }
+
+        boolean isTyped() {
+            return typed;
+        }
+    }
+
+    interface RemoteContexts {
+        // the context published at the url, without looking it up remotely; null if it is not known
+        JsonLdContext get(String url) throws UnsupportedJsonLdException;
+    }
+
+    // applies the context at the current token of the parser: a url, a context definition, or an array of those
+    JsonLdContext apply(JsonParser parser, RemoteContexts remoteContexts) throws IOException, UnsupportedJsonLdException {
+        switch (parser.currentToken()) {
+            case VALUE_NULL:
+                return EMPTY;
+            case VALUE_STRING:
+                var url = parser.getText();
+                var remote = remoteContexts.get(url);
+
+                if (remote == null) {
+                    throw new UnsupportedJsonLdException("Unknown remote context " + url);
+                }
+
+                return merge(remote);
+            case START_ARRAY:
+                var result = this;
+
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    result = result.apply(parser, remoteContexts);
+                }
+
+                return result;
+            case START_OBJECT:
+                return applyDefinitions(parser);
+            default:
+                throw new UnsupportedJsonLdException("Invalid context " + parser.currentToken());
+        }
+    }
+
+    // the keyword for a key, which may be an alias of one; null if it is not a keyword
+    String keyword(String key) {
+        return key.startsWith("@") ? key : aliases.get(key);
+    }
+
+    Term term(String key) {
+        return terms.get(key);
+    }
+
+    // the IRI of a property or type; null if the key has no IRI, in which case JSON-LD ignores it
+    String expandVocab(String key) {
+        var term = terms.get(key);
+
+        if (term != null) {
+            return term.iri;
+        }
+
+        var colon = key.indexOf(':');
+
+        if (colon <= 0) {
+            return null;
+        }
+
+        return expandCompactIri(key, colon);
+    }
+
+    // the IRI of a node id or of a string value that is a reference
+    String expandId(String value) {
+        var colon = value.indexOf(':');
+        return colon <= 0 ? value : expandCompactIri(value, colon);
+    }
+
+    private String expandCompactIri(String value, int colon) {
+        var prefix = value.substring(0, colon);
+        var suffix = value.substring(colon + 1);
+
+        if ("_".equals(prefix) || suffix.startsWith("//")) {
+            return value;
+        }
+
+        // otherwise it is an absolute IRI of which the prefix is the scheme
+        var term = terms.get(prefix);
+        return term == null || !term.prefix ? value : term.iri + suffix;
+    }
+
+    private JsonLdContext merge(JsonLdContext other) {
+        var mergedTerms = new HashMap<>(terms);
+        var mergedAliases = new HashMap<>(aliases);
+
+        for (var entry : other.terms.entrySet()) {
+            mergedAliases.remove(entry.getKey());
+            mergedTerms.put(entry.getKey(), entry.getValue());
+        }
+
+        for (var entry : other.aliases.entrySet()) {
+            mergedTerms.remove(entry.getKey());
+            mergedAliases.put(entry.getKey(), entry.getValue());
+        }
+
+        return new JsonLdContext(mergedTerms, mergedAliases);
+    }
+
+    private JsonLdContext applyDefinitions(JsonParser parser) throws IOException, UnsupportedJsonLdException {
+        var definitions = new LinkedHashMap<String, Definition>();
+        var undefined = new HashSet<String>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var key = parser.getCurrentName();
+            var token = parser.nextToken();
+
+            if (key.startsWith("@")) {
+                // neither changes the extracted values
+                if ("@version".equals(key) || "@language".equals(key)) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                throw new UnsupportedJsonLdException("Unsupported context keyword " + key);
+            }
+
+            if (token == JsonToken.VALUE_NULL) {
+                undefined.add(key);
+            }
+            else if (token == JsonToken.VALUE_STRING) {
+                definitions.put(key, new Definition(parser.getText(), null, true));
+            }
+            else if (token == JsonToken.START_OBJECT) {
+                var definition = readDefinition(key, parser);
+
+                if (definition == null) {
+                    undefined.add(key);
+                }
+                else {
+                    definitions.put(key, definition);
+                }
+            }
+            else {
+                throw new UnsupportedJsonLdException("Invalid definition of term " + key);
+            }
+        }
+
+        var resolved = new Resolution(definitions);
+
+        for (var key : definitions.keySet()) {
+            resolved.resolve(key);
+        }
+
+        var mergedTerms = new HashMap<>(terms);
+        var mergedAliases = new HashMap<>(aliases);
+
+        for (var key : undefined) {
+            mergedTerms.remove(key);
+            mergedAliases.remove(key);
+        }
+
+        return new JsonLdContext(mergedTerms, mergedAliases).merge(new JsonLdContext(resolved.terms, resolved.aliases));
+    }
+
+    // null if the definition removes the term
+    private Definition readDefinition(String key, JsonParser parser) throws IOException, UnsupportedJsonLdException {
+        String id = null;
+        String type = null;
+        var idNull = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var name = parser.getCurrentName();
+            var token = parser.nextToken();
+
+            switch (name) {
+                case "@id":
+                    if (token == JsonToken.VALUE_NULL) {
+                        idNull = true;
+                    }
+                    else {
+                        id = requireString(parser, key);
+                    }
+                    break;
+                case "@type":
+                    type = requireString(parser, key);
+                    break;
+                case "@language":
+                case "@direction":
+                    // only change the language or direction of literals, not their values
+                    parser.skipChildren();
+                    break;
+                case "@container":
+                    // an @set container only changes how the JSON looks, not the RDF it stands for
+                    if (token != JsonToken.VALUE_STRING || !"@set".equals(parser.getText())) {
+                        throw new UnsupportedJsonLdException("Unsupported container of term " + key);
+                    }
+                    break;
+                default:
+                    throw new UnsupportedJsonLdException("Unsupported " + name + " in definition of term " + key);
+            }
+        }
+
+        return idNull ? null : new Definition(id, type, false);
+    }
+
+    private String requireString(JsonParser parser, String key) throws IOException, UnsupportedJsonLdException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            throw new UnsupportedJsonLdException("Invalid definition of term " + key);
+        }
+
+        return parser.getText();
+    }
+
+    private static class Definition {
+        // null if the term is a compact IRI that defines its own IRI
+        private final String id;
+        private final String type;
+        // given as a string instead of an object
+        private final boolean simple;
+
+        Definition(String id, String type, boolean simple) {
+            this.id = id;
+            this.type = type;
+            this.simple = simple;
+        }
+    }
+
+    // resolves the definitions of one context object, which may refer to each other in any order
+    private class Resolution {
+        private final Map<String, Definition> definitions;
+        private final Map<String, Term> terms = new HashMap<>();
+        private final Map<String, String> aliases = new HashMap<>();
+        private final Set<String> resolving = new HashSet<>();
+
+        Resolution(Map<String, Definition> definitions) {
+            this.definitions = definitions;
+        }
+
+        // the IRI of the term, or its keyword if it is an alias
+        String resolve(String key) throws UnsupportedJsonLdException {
+            if (terms.containsKey(key)) {
+                return terms.get(key).iri;
+            }
+
+            if (aliases.containsKey(key)) {
+                return aliases.get(key);
+            }
+
+            if (!resolving.add(key)) {
+                throw new UnsupportedJsonLdException("Cyclic definition of term " + key);
+            }
+
+            var definition = definitions.get(key);
+            var iri = definition.id == null ? expandOwnIri(key) : expand(definition.id);
+
+            if (iri.startsWith("@")) {
+                aliases.put(key, iri);
+                return iri;
+            }
+
+            var reference = false;
+            var typed = false;
+
+            if (definition.type != null) {
+                if ("@id".equals(definition.type) || "@vocab".equals(definition.type)) {
+                    reference = true;
+                }
+                else if (definition.type.startsWith("@")) {
+                    throw new UnsupportedJsonLdException("Unsupported type " + definition.type + " of term " + key);
+                }
+                else {
+                    typed = !XSD_STRING.equals(expand(definition.type));
+                }
+            }
+
+            // as of JSON-LD 1.1, only simple terms of which the IRI ends with a gen-delim character expand compact IRIs
+            var prefix = definition.simple && key.indexOf(':') < 0 && key.indexOf('/') < 0
+                && (iri.startsWith("_:") || !iri.isEmpty() && GEN_DELIMS.indexOf(iri.charAt(iri.length() - 1)) >= 0);
+
+            terms.put(key, new Term(iri, reference, typed, prefix));
+            return iri;
+        }
+
+        private String expandOwnIri(String key) throws UnsupportedJsonLdException {
+            var colon = key.indexOf(':');
+
+            if (colon <= 0) {
+                throw new UnsupportedJsonLdException("Term " + key + " has no IRI");
+            }
+
+            return expandPrefixed(key, colon);
+        }
+
+        private String expand(String value) throws UnsupportedJsonLdException {
+            if (value.startsWith("@")) {
+                return value;
+            }
+
+            if (definitions.containsKey(value)) {
+                return resolve(value);
+            }
+
+            if (JsonLdContext.this.terms.containsKey(value)) {
+                return JsonLdContext.this.terms.get(value).iri;
+            }
+
+            var colon = value.indexOf(':');
+
+            if (colon <= 0) {
+                // would need @vocab or @base
+                throw new UnsupportedJsonLdException("Relative IRI " + value);
+            }
+
+            return expandPrefixed(value, colon);
+        }
+
+        private String expandPrefixed(String value, int colon) throws UnsupportedJsonLdException {
+            var prefix = value.substring(0, colon);
+            var suffix = value.substring(colon + 1);
+
+            if ("_".equals(prefix) || suffix.startsWith("//")) {
+                return value;
+            }
+
+            if (definitions.containsKey(prefix)) {
+                var iri = resolve(prefix);
+                var term = terms.get(prefix);
+                return term == null || !term.prefix ? value : iri + suffix;
+            }
+
+            var term = JsonLdContext.this.terms.get(prefix);
+            return term == null || !term.prefix ? value : term.iri + suffix;
+        }
+    }
+}
@@ -15,10 +15,21 @@
  */
 package nl.knaw.dans.catalog.core.solr;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.Builder;
 import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
 import nl.knaw.dans.catalog.core.solr.vocabulary.DVCitation;
 import nl.knaw.dans.catalog.core.solr.vocabulary.ORE;
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Property;
@@ -29,31 +40,195 @@ import org.apache.jena.vocabulary.RDF;
 import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+@Slf4j
 public class OcflObjectMetadataReader {
+    // predicate IRIs are few, so each one is turned into a field name only once; the limit only guards against
+    // documents with arbitrary predicates
+    private static final int MAX_FIELD_NAMES = 100000;
+    private static final Map<String, String> FIELD_NAMES = new ConcurrentHashMap<>();
+
+    private static final TypeReference<Map<String, List<String>>> SEARCH_FIELDS_TYPE = new TypeReference<>() {};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BundledContexts bundledContexts = new BundledContexts(objectMapper);
+    // null when caching is disabled
+    private final Cache<String, OcflObjectMetadata> cache;
+    private final Meter cacheHits;
+    private final Meter cacheMisses;
+    // null when the metadata is always read with Jena
+    private final StreamingJsonLdExtractor streamingExtractor;
+    private final Meter fallbacks;
+
+    public OcflObjectMetadataReader() {
+        this.cache = null;
+        this.cacheHits = null;
+        this.cacheMisses = null;
+        this.streamingExtractor = null;
+        this.fallbacks = null;
+    }
+
+    // keeps the metadata of at most cacheSize distinct documents, so that metadata that did not change is parsed only
+    // once; a cacheSize of 0 disables the cache
+    public OcflObjectMetadataReader(DdVaultCatalogConfiguration.MetadataConfig metadataConfig, MetricRegistry metricRegistry) {
+        var cacheSize = metadataConfig.getCacheSize();
+
+        if (metadataConfig.getExtractor() == MetadataExtractor.STREAMING) {
+            this.streamingExtractor = new StreamingJsonLdExtractor(bundledContexts, objectMapper);
+            this.fallbacks = metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "streaming-fallbacks"));
+        }
+        else {
+            this.streamingExtractor = null;
+            this.fallbacks = null;
+        }
+
+        if (cacheSize > 0) {
+            var cache = Caffeine.newBuilder().maximumSize(cacheSize).<String, OcflObjectMetadata> build();
+
+            this.cache = cache;
+            this.cacheHits = metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "cache-hits"));
+            this.cacheMisses = metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "cache-misses"));
+            metricRegistry.gauge(MetricRegistry.name(OcflObjectMetadataReader.class, "cache-size"), () -> (Gauge<Long>) cache::estimatedSize);
+        }
+        else {
+            this.cache = null;
+            this.cacheHits = null;
+            this.cacheMisses = null;
+        }
+    }
+
+    // stores the search fields of the metadata on the OCFL object version, so that it can be indexed without reading the
+    // metadata again; returns false if the metadata cannot be read, in which case nothing is stored
+    public boolean storeSearchFields(OcflObjectVersion ocflObjectVersion) {
+        if (ocflObjectVersion.getMetadata() == null) {
+            return false;
+        }
+
+        try {
+            var metadata = readMetadata(ocflObjectVersion.getMetadata());
+            var fields = new TreeMap<String, List<String>>();
+
+            for (var entry : metadata.getMetadata().entrySet()) {
+                var values = new ArrayList<>(entry.getValue());
+                values.sort(String::compareTo);
+                fields.put(entry.getKey(), values);
+            }
+
+            ocflObjectVersion.setSearchFields(objectMapper.writeValueAsString(fields));
+            ocflObjectVersion.setTitle(metadata.getTitle());
+            ocflObjectVersion.setDescription(metadata.getDescription());
+            return true;
+        }
+        catch (RuntimeException | JsonProcessingException e) {
+            log.warn("Cannot extract search fields of OCFL object version {}", ocflObjectVersion.getId(), e);
+            return false;
+        }
+    }
+
+    // the stored search fields of the OCFL object version, or those read from its metadata if none were stored
+    public OcflObjectMetadata getSearchFields(OcflObjectVersion ocflObjectVersion) {
+        if (ocflObjectVersion.getSearchFields() == null) {
+            return readMetadata(ocflObjectVersion.getMetadata());
+        }
+
+        try {
+            var fields = objectMapper.readValue(ocflObjectVersion.getSearchFields(), SEARCH_FIELDS_TYPE);
+            var result = new HashMap<String, Set<String>>();
+
+            for (var entry : fields.entrySet()) {
+                result.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<>(entry.getValue())));
+            }
+
+            return OcflObjectMetadata.builder()
+                .metadata(Collections.unmodifiableMap(result))
+                .title(ocflObjectVersion.getTitle())
+                .description(ocflObjectVersion.getDescription())
+                .build();
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid search fields stored for OCFL object version " + ocflObjectVersion.getId(), e);
+        }
+    }
 
     public OcflObjectMetadata readMetadata(String json) {
+        if (cache == null) {
+            return parseMetadata(json);
+        }
+
+        // keyed by a hash, so that the cache does not keep the (large) documents themselves
+        var key = hash(json);
+        var metadata = cache.getIfPresent(key);
+
+        if (metadata != null) {
+            cacheHits.mark();
+            return metadata;
+        }
+
+        cacheMisses.mark();
+        metadata = parseMetadata(json);
+        cache.put(key, metadata);
+
+        return metadata;
+    }
+
+    static String hash(String json) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private OcflObjectMetadata parseMetadata(String json) {
+        if (streamingExtractor != null) {
+            try {
+                return streamingExtractor.extract(json);
+            }
+            catch (UnsupportedJsonLdException e) {
+                log.debug("Reading metadata with Jena: {}", e.getMessage());
+                fallbacks.mark();
+            }
+        }
+
+        return readModel(json);
+    }
+
+    private OcflObjectMetadata readModel(String json) {
         var result = new HashMap<String, Set<String>>();
         var model = ModelFactory.createDefaultModel();
-        model.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), null, "JSON-LD");
+        model.read(new ByteArrayInputStream(inlineContexts(json)), null, "JSON-LD");
         model.listStatements().forEach(statement -> {
             var obj = statement.getObject();
 
             if (obj.isLiteral()) {
-                var name = makeFieldName(statement.getPredicate());
+                var name = getFieldName(statement.getPredicate().getURI());
                 var value = obj.asLiteral().getValue();
 
                 result.computeIfAbsent(name, k -> new HashSet<>()).add(value.toString());
             }
         });
 
+        // the result may be cached and shared between threads, so it is made unmodifiable
+        result.replaceAll((name, values) -> Collections.unmodifiableSet(values));
+
         var builder = OcflObjectMetadata.builder()
-            .metadata(result);
+            .metadata(Collections.unmodifiableMap(result));
 
         var aggregations = model.listStatements(null, RDF.type, ORE.Aggregation);
 
@@ -67,6 +242,18 @@ public class OcflObjectMetadataReader {
         return builder.build();
     }
 
+    // Jena would otherwise look up the bundled remote contexts for every document
+    private byte[] inlineContexts(String json) {
+        try {
+            var document = objectMapper.readTree(json);
+            bundledContexts.inline(document);
+            return objectMapper.writeValueAsBytes(document);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Metadata is not valid JSON", e);
+        }
+    }
+
     private String getEmbeddedRDFProperty(Resource resource, Property parent, Property child) {
         var results = new HashSet<String>();
 
@@ -108,8 +295,22 @@ public class OcflObjectMetadataReader {
         return StringUtils.join(list, "; ");
     }
 
-    String makeFieldName(Property prop) {
-        var uri = URI.create(prop.getURI());
+    static String getFieldName(String predicate) {
+        var name = FIELD_NAMES.get(predicate);
+
+        if (name == null) {
+            name = makeFieldName(predicate);
+
+            if (FIELD_NAMES.size() < MAX_FIELD_NAMES) {
+                FIELD_NAMES.put(predicate, name);
+            }
+        }
+
+        return name;
+    }
+
+    static String makeFieldName(String predicate) {
+        var uri = URI.create(predicate);
         var stripped = uri.getSchemeSpecificPart();
 
         if (uri.getFragment() != null) {
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+// for reindexes that build a new collection and then switch the alias to it; the alias remembers the collection it
+// pointed to before, so that the switch can be rolled back
+@Slf4j
+public class SolrAliasSwitcher {
+    private static final String PREVIOUS_PROPERTY = "previous";
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final SolrCollections collections;
+
+    public SolrAliasSwitcher(SolrCollections collections) {
+        this.collections = collections;
+    }
+
+    public String getAlias() {
+        return collections.getAlias();
+    }
+
+    public Optional<String> getCurrentCollection() {
+        return collections.getAliasedCollection();
+    }
+
+    // creates an empty collection, named after the alias and the current time, and returns its name
+    public String createCollection() {
+        var collection = collections.getAlias() + "_" + LocalDateTime.now().format(SUFFIX_FORMAT);
+        collections.createCollection(collection);
+        return collection;
+    }
+
+    // switches only if the collection has as many OCFL object versions as the database had while the collection was
+    // filled; versions are never deleted, but may be added while counting, hence the range
+    public Optional<String> switchIfComplete(String collection, long expectedAtLeast, long expectedAtMost) {
+        var actual = collections.countOcflObjectVersions(collection);
+
+        if (actual < expectedAtLeast || actual > expectedAtMost) {
+            throw new SearchIndexException(String.format("Solr collection %s has %d OCFL object versions, the database %d to %d; alias %s was not switched, "
+                + "the collection can be deleted", collection, actual, expectedAtLeast, expectedAtMost, collections.getAlias()), null);
+        }
+
+        return switchTo(collection);
+    }
+
+    // points the alias to the collection and returns the collection it pointed to before
+    public Optional<String> switchTo(String collection) {
+        var current = collections.getAliasedCollection();
+        collections.setAlias(collection);
+        current.ifPresent(previous -> collections.setAliasProperty(PREVIOUS_PROPERTY, previous));
+
+        log.info("Switched Solr alias {} from {} to {}", collections.getAlias(), current.orElse("nothing"), collection);
+        return current;
+    }
+
+    // points the alias back to the collection it pointed to before the last switch, and returns it
+    public String rollback() {
+        var previous = collections.getAliasProperty(PREVIOUS_PROPERTY)
+            .orElseThrow(() -> new IllegalStateException("Solr alias " + collections.getAlias() + " has no previous collection to roll back to"));
+
+        switchTo(previous);
+        return previous;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import java.io.IOException;
+import java.util.Optional;
+
+// the collections behind the alias that the service writes to and searches in (SolrConfig.schema); see SolrAliasSwitcher
+public interface SolrCollections extends AutoCloseable {
+
+    String getAlias();
+
+    void createCollection(String collection);
+
+    // the collection the alias points to now, empty if there is no such alias
+    Optional<String> getAliasedCollection();
+
+    // points the alias to the collection, which Solr does atomically
+    void setAlias(String collection);
+
+    Optional<String> getAliasProperty(String name);
+
+    void setAliasProperty(String name, String value);
+
+    long countOcflObjectVersions(String collection);
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.response.CollectionAdminResponse;
+import org.apache.solr.common.SolrException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+@Slf4j
+public class SolrCollectionsImpl implements SolrCollections {
+    private final Http2SolrClient solrClient;
+    private final String alias;
+    private final DdVaultCatalogConfiguration.SolrBlueGreenConfig blueGreenConfig;
+
+    public SolrCollectionsImpl(DdVaultCatalogConfiguration.SolrConfig solrConfig) {
+        if (solrConfig.getSchema() == null) {
+            throw new IllegalStateException("solr.schema must be set to the alias of the collection, with a solr.url without collection");
+        }
+
+        this.solrClient = new Http2SolrClient.Builder(solrConfig.getUrl()).build();
+        this.alias = solrConfig.getSchema();
+        this.blueGreenConfig = solrConfig.getBlueGreen();
+    }
+
+    @Override
+    public String getAlias() {
+        return alias;
+    }
+
+    @Override
+    public void createCollection(String collection) {
+        if (blueGreenConfig.getConfigSet() == null) {
+            throw new IllegalStateException("solr.blueGreen.configSet must be set to create collections");
+        }
+
+        log.info("Creating Solr collection {} with config set {}", collection, blueGreenConfig.getConfigSet());
+
+        process(CollectionAdminRequest.createCollection(collection, blueGreenConfig.getConfigSet(), blueGreenConfig.getNumShards(), blueGreenConfig.getReplicationFactor()),
+            "Error creating Solr collection " + collection);
+    }
+
+    @Override
+    public Optional<String> getAliasedCollection() {
+        return Optional.ofNullable(listAliases().getAliases().get(alias));
+    }
+
+    @Override
+    public void setAlias(String collection) {
+        // a collection with the name of the alias would take precedence over it
+        process(CollectionAdminRequest.createAlias(alias, collection), "Error pointing Solr alias " + alias + " to " + collection
+            + "; if it is the name of a collection, the first switch requires moving that collection behind the alias");
+    }
+
+    @Override
+    public Optional<String> getAliasProperty(String name) {
+        var properties = listAliases().getAliasProperties().get(alias);
+        return Optional.ofNullable(properties == null ? null : properties.get(name));
+    }
+
+    @Override
+    public void setAliasProperty(String name, String value) {
+        process(CollectionAdminRequest.setAliasProperty(alias).addProperty(name, value), "Error setting property " + name + " of Solr alias " + alias);
+    }
+
+    @Override
+    public long countOcflObjectVersions(String collection) {
+        var query = new SolrQuery("doc_type:" + SolrDocumentMapper.DOC_TYPE_OCFL_OBJECT_VERSION).setRows(0);
+
+        try {
+            return solrClient.query(collection, query).getResults().getNumFound();
+        }
+        catch (SolrServerException | IOException | SolrException e) {
+            throw new SearchIndexException("Error counting the documents in Solr collection " + collection, e);
+        }
+    }
+
+    private CollectionAdminResponse listAliases() {
+        try {
+            return CollectionAdminRequest.listAliases().process(solrClient);
+        }
+        catch (SolrServerException | IOException | SolrException e) {
+            throw new SearchIndexException("Error listing the Solr aliases", e);
+        }
+    }
+
+    private void process(CollectionAdminRequest<?> request, String error) {
+        try {
+            request.process(solrClient);
+        }
+        catch (SolrServerException | IOException | SolrException e) {
+            throw new SearchIndexException(error, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        solrClient.close();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Runs at most one commit at a time. Requests that arrive while a commit is running share the next commit, so any
+// number of concurrent writers cause at most two commits in a row instead of one each.
+@Slf4j
+class SolrCommitCoalescer {
+    private final SolrClient solrClient;
+    private final String collection;
+    private final boolean softCommit;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "solr-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CompletableFuture<Void> next;
+    private boolean running;
+
+    SolrCommitCoalescer(SolrClient solrClient, String collection, boolean softCommit) {
+        this.solrClient = solrClient;
+        this.collection = collection;
+        this.softCommit = softCommit;
+    }
+
+    // completes when a commit that started after this call has finished, so everything added before is then visible
+    synchronized CompletableFuture<Void> requestCommit() {
+        if (next == null) {
+            next = new CompletableFuture<>();
+
+            if (!running) {
+                startNext();
+            }
+        }
+
+        return next;
+    }
+
+    private void startNext() {
+        var current = next;
+        next = null;
+        running = true;
+
+        executor.execute(() -> {
+            try {
+                solrClient.commit(collection, true, true, softCommit);
+                current.complete(null);
+            }
+            catch (SolrServerException | IOException | RuntimeException e) {
+                log.error("Error committing to Solr collection {}", collection, e);
+                current.completeExceptionally(new SearchIndexException(String.format("Error committing to Solr collection %s", collection), e));
+            }
+            finally {
+                synchronized (this) {
+                    running = false;
+
+                    if (next != null) {
+                        startNext();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.Tar;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// maps OCFL object versions and TARs to Solr documents, in the given layout
+public class SolrDocumentMapper {
+    static final String DOC_TYPE_OCFL_OBJECT_VERSION = "ocfl_object_version";
+    static final String DOC_TYPE_TAR = "tar";
+
+    private final OcflObjectMetadataReader ocflObjectMetadataReader;
+    private final SolrIndexLayout layout;
+
+    public SolrDocumentMapper(OcflObjectMetadataReader ocflObjectMetadataReader, SolrIndexLayout layout) {
+        this.ocflObjectMetadataReader = ocflObjectMetadataReader;
+        this.layout = layout;
+    }
+
+    // maps an OCFL object version on its own
+    public SolrInputDocument mapOcflObjectVersion(OcflObjectVersion ocflObjectVersion) {
+        return mapOcflObjectVersion(ocflObjectVersion, ocflObjectVersion.getTar() == null ? null : TarFragment.of(ocflObjectVersion.getTar()));
+    }
+
+    // maps OCFL object versions that may share TARs; the fields of each TAR are built only once, and with the JOINED
+    // layout the documents of their TARs are included, so that a reindex of the versions also restores the TARs
+    public List<SolrInputDocument> mapOcflObjectVersions(Collection<OcflObjectVersion> ocflObjectVersions) {
+        var fragments = new LinkedHashMap<String, TarFragment>();
+        var documents = new ArrayList<SolrInputDocument>(ocflObjectVersions.size());
+
+        for (var ocflObjectVersion : ocflObjectVersions) {
+            var tar = ocflObjectVersion.getTar();
+            var fragment = tar == null ? null : fragments.computeIfAbsent(tar.getTarUuid(), id -> TarFragment.of(tar));
+
+            documents.add(mapOcflObjectVersion(ocflObjectVersion, fragment));
+        }
+
+        if (layout == SolrIndexLayout.JOINED) {
+            for (var fragment : fragments.values()) {
+                documents.add(fragment.toDocument());
+            }
+        }
+
+        return documents;
+    }
+
+    // the documents that change when a TAR changes: with the EMBEDDED layout those of all its OCFL object versions, with
+    // the JOINED layout only that of the TAR
+    public List<SolrInputDocument> mapTar(Tar tar) {
+        var fragment = TarFragment.of(tar);
+
+        if (layout == SolrIndexLayout.JOINED) {
+            return List.of(fragment.toDocument());
+        }
+
+        return mapOcflObjectVersions(tar.getOcflObjectVersions(), fragment);
+    }
+
+    // atomic updates that only set the TAR fields of the documents of OCFL object versions that joined or left a TAR;
+    // the rest of these documents, such as the metadata fields, is kept as it is in the index
+    public List<SolrInputDocument> mapTarFields(Collection<OcflObjectVersion> ocflObjectVersions) {
+        var fragments = new HashMap<String, TarFragment>();
+        var documents = new ArrayList<SolrInputDocument>(ocflObjectVersions.size());
+
+        for (var ocflObjectVersion : ocflObjectVersions) {
+            var tar = ocflObjectVersion.getTar();
+            var fragment = tar == null ? null : fragments.computeIfAbsent(tar.getTarUuid(), id -> TarFragment.of(tar));
+
+            documents.add(mapTarFields(ocflObjectVersion, fragment));
+        }
+
+        return documents;
+    }
+
+    // like mapTarFields(Collection), for OCFL object versions that are all in the TAR of the fragment
+    List<SolrInputDocument> mapTarFields(Collection<OcflObjectVersion> ocflObjectVersions, TarFragment fragment) {
+        var documents = new ArrayList<SolrInputDocument>(ocflObjectVersions.size());
+
+        for (var ocflObjectVersion : ocflObjectVersions) {
+            documents.add(mapTarFields(ocflObjectVersion, fragment));
+        }
+
+        return documents;
+    }
+
+    boolean isJoined() {
+        return layout == SolrIndexLayout.JOINED;
+    }
+
+    // maps OCFL object versions that are all in the TAR of the fragment
+    List<SolrInputDocument> mapOcflObjectVersions(Collection<OcflObjectVersion> ocflObjectVersions, TarFragment fragment) {
+        var documents = new ArrayList<SolrInputDocument>(ocflObjectVersions.size());
+
+        for (var ocflObjectVersion : ocflObjectVersions) {
+            documents.add(mapOcflObjectVersion(ocflObjectVersion, fragment));
+        }
+
+        return documents;
+    }
+
+    private SolrInputDocument mapTarFields(OcflObjectVersion ocflObjectVersion, TarFragment fragment) {
+        var doc = new SolrInputDocument();
+        doc.setField("id", getDocumentId(ocflObjectVersion));
+        // makes the update fail with a conflict when the document is not in the index yet, instead of creating a document
+        // with only these fields
+        doc.setField("_version_", 1L);
+        // the TAR fields as the full document has them, to update the fingerprint of the TAR fields with them
+        var tarFields = new SolrInputDocument();
+
+        if (layout == SolrIndexLayout.JOINED) {
+            doc.setField("tar_id", TarFragment.set(fragment == null ? null : fragment.getTarId()));
+
+            if (fragment != null) {
+                tarFields.setField("tar_id", fragment.getTarId());
+            }
+        }
+        else if (fragment == null) {
+            TarFragment.removeFrom(doc);
+        }
+        else {
+            fragment.applyAsUpdateTo(doc);
+            fragment.applyTo(tarFields);
+        }
+
+        // the fingerprint of the other fields still holds, as they are not changed
+        doc.setField("tar_fingerprint", TarFragment.set(hash(tarFields, TarFragment::isTarField)));
+        return doc;
+    }
+
+    private SolrInputDocument mapOcflObjectVersion(OcflObjectVersion ocflObjectVersion, TarFragment fragment) {
+        var doc = new SolrInputDocument();
+
+        doc.setField("id", getDocumentId(ocflObjectVersion));
+        doc.setField("doc_type", DOC_TYPE_OCFL_OBJECT_VERSION);
+        doc.setField("bag_id", ocflObjectVersion.getId().getBagId());
+        doc.setField("object_version", ocflObjectVersion.getId().getObjectVersion());
+        doc.setField("nbn", ocflObjectVersion.getNbn());
+        doc.setField("dataverse_pid", ocflObjectVersion.getDataversePid());
+        doc.setField("dataverse_pid_version", ocflObjectVersion.getDataversePidVersion());
+        doc.setField("datastation", ocflObjectVersion.getDataSupplier());
+        doc.setField("data_supplier", ocflObjectVersion.getDataSupplier());
+        doc.setField("sword_token", ocflObjectVersion.getSwordToken());
+        doc.setField("other_id", ocflObjectVersion.getOtherId());
+        doc.setField("other_id_version", ocflObjectVersion.getOtherIdVersion());
+        doc.setField("filepid_to_local_path", ocflObjectVersion.getFilePidToLocalPath());
+        doc.setField("ocfl_object_path", ocflObjectVersion.getOcflObjectPath());
+        doc.setField("export_timestamp", formatDate(ocflObjectVersion.getExportTimestamp()));
+
+        // make the ID's searchable; stored, and copied to _text_ by the schema, so that atomic updates keep them
+        doc.addField("short_id", ocflObjectVersion.getId().getBagId().replace("urn:uuid:", ""));
+        doc.addField("short_id", ocflObjectVersion.getNbn().replace("urn:nbn:nl:ui:", ""));
+
+        if (fragment != null) {
+            if (layout == SolrIndexLayout.JOINED) {
+                doc.setField("tar_id", fragment.getTarId());
+            }
+            else {
+                fragment.applyTo(doc);
+            }
+        }
+
+        var metadata = ocflObjectMetadataReader.getSearchFields(ocflObjectVersion);
+
+        for (var entry : metadata.getMetadata().entrySet()) {
+            var fieldName = entry.getKey() + "_txt";
+
+            for (var value : entry.getValue()) {
+                doc.addField(fieldName, value);
+            }
+        }
+
+        // specific metadata we want to store so we can show it in search results
+        doc.addField("title", metadata.getTitle());
+        doc.addField("description", metadata.getDescription());
+
+        addFingerprint(doc);
+        return doc;
+    }
+
+    // hashes of all fields but the id, so that a document that would not change the index need not be sent again; the
+    // TAR fields have their own, so that it can be kept up to date when only they are updated
+    static void addFingerprint(SolrInputDocument doc) {
+        doc.setField("fingerprint", hash(doc, name -> !TarFragment.isTarField(name)));
+        doc.setField("tar_fingerprint", hash(doc, TarFragment::isTarField));
+    }
+
+    // the fingerprint of a document as a whole, from its fields; null if it has none
+    static String getFingerprint(Function<String, Object> fields) {
+        var fingerprint = fields.apply("fingerprint");
+
+        if (fingerprint == null) {
+            return null;
+        }
+
+        return fingerprint + ":" + fields.apply("tar_fingerprint");
+    }
+
+    private static String hash(SolrInputDocument doc, Predicate<String> include) {
+        var text = new StringBuilder();
+
+        for (var name : new TreeSet<>(doc.getFieldNames())) {
+            if (name.equals("id") || name.equals("fingerprint") || name.equals("tar_fingerprint") || !include.test(name)) {
+                continue;
+            }
+
+            var values = doc.getFieldValues(name);
+            text.append(name);
+
+            if (values != null) {
+                for (var value : values) {
+                    text.append('\u0000').append(value);
+                }
+            }
+
+            text.append('\u0001');
+        }
+
+        return OcflObjectMetadataReader.hash(text.toString());
+    }
+
+    private static String getDocumentId(OcflObjectVersion ocflObjectVersion) {
+        return String.format("%s/%s", ocflObjectVersion.getId().getBagId(), ocflObjectVersion.getId().getObjectVersion());
+    }
+
+    static String formatDate(OffsetDateTime date) {
+        if (date == null) {
+            return null;
+        }
+
+        return date.format(DateTimeFormatter.ISO_DATE_TIME);
+    }
+}
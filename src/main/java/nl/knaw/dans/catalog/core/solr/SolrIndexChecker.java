@@ -0,0 +1,445 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import io.dropwizard.hibernate.UnitOfWork;
+import io.dropwizard.lifecycle.Managed;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.OcflObjectVersionRepository;
+import nl.knaw.dans.catalog.core.SearchIndex;
+import nl.knaw.dans.catalog.core.TarRepository;
+import nl.knaw.dans.catalog.core.domain.IndexCheckResult;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CursorMarkParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// compares the OCFL object versions in the database with their documents in Solr and, with repair, reindexes the ones
+// that are missing or stale and deletes the documents of versions that do not exist; with the JOINED layout the TARs are
+// compared with their documents in the same way; both sides are read page by page in the same order and merged, so
+// memory use does not depend on the size of the catalog
+@Slf4j
+public class SolrIndexChecker implements Managed {
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::getBagId).thenComparingInt(Entry::getObjectVersion);
+
+    private final OcflObjectVersionRepository ocflObjectVersionRepository;
+    private final TarRepository tarRepository;
+    private final SearchIndex searchIndex;
+    private final SolrDocumentMapper documentMapper;
+    private final Http2SolrClient solrClient;
+    private final String collection;
+    private final int pageSize;
+
+    // a TAR is compared by its uuid in place of the bag id, with object version 0
+    @Value
+    public static class Entry {
+        String id;
+        String bagId;
+        int objectVersion;
+        String fingerprint;
+    }
+
+    interface Differences {
+        void same(Entry entry);
+
+        void missing(Entry entry);
+
+        void stale(Entry entry);
+
+        void orphaned(Entry entry);
+    }
+
+    public SolrIndexChecker(OcflObjectVersionRepository ocflObjectVersionRepository, TarRepository tarRepository, SearchIndex searchIndex,
+        OcflObjectMetadataReader ocflObjectMetadataReader, DdVaultCatalogConfiguration.SolrConfig solrConfig, DdVaultCatalogConfiguration.ReindexConfig reindexConfig) {
+        this.ocflObjectVersionRepository = ocflObjectVersionRepository;
+        this.tarRepository = tarRepository;
+        this.searchIndex = searchIndex;
+        this.documentMapper = new SolrDocumentMapper(ocflObjectMetadataReader, solrConfig.getLayout());
+        this.solrClient = new Http2SolrClient.Builder(solrConfig.getUrl()).build();
+        this.collection = solrConfig.getSchema();
+        this.pageSize = reindexConfig.getPageSize();
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+        solrClient.close();
+    }
+
+    public IndexCheckResult check(boolean repair) {
+        var versions = new Repairs(repair, entries -> reindex(entries.stream()
+            .map(entry -> new OcflObjectVersionId(entry.getBagId(), entry.getObjectVersion()))
+            .collect(Collectors.toList())));
+
+        diff(new DatabaseEntries(), new SolrEntries(SolrDocumentMapper.DOC_TYPE_OCFL_OBJECT_VERSION, "bag_id", "object_version"), versions);
+        versions.finish();
+
+        var tars = new Repairs(repair, entries -> reindexTars(entries.stream()
+            .map(Entry::getBagId)
+            .collect(Collectors.toList())));
+
+        // with the EMBEDDED layout the TAR fields are part of the documents of the versions, and compared with them
+        if (documentMapper.isJoined()) {
+            diff(new DatabaseTarEntries(), new SolrEntries(SolrDocumentMapper.DOC_TYPE_TAR, "tar_id", null), tars);
+            tars.finish();
+        }
+
+        var result = new IndexCheckResult(versions.entries, tars.entries, versions.documents + tars.documents, versions.missing + tars.missing,
+            versions.stale + tars.stale, versions.orphaned + tars.orphaned, repair);
+        log.info("Checked {} OCFL object versions and {} TARs against {} documents: {} missing, {} stale, {} orphaned{}",
+            result.getOcflObjectVersions(), result.getTars(), result.getDocuments(), result.getMissing(), result.getStale(), result.getOrphaned(),
+            repair ? ", repaired" : "");
+        return result;
+    }
+
+    // the entries of the OCFL object versions after the given one (null for the first page), with the fingerprints of the
+    // documents that they map to
+    @UnitOfWork(readOnly = true)
+    public List<Entry> readPage(OcflObjectVersionId after) {
+        var page = ocflObjectVersionRepository.findPage(ReindexScope.all(), after, pageSize);
+        // with the JOINED layout the documents of the TARs follow those of the versions
+        var documents = documentMapper.mapOcflObjectVersions(page);
+        var entries = new ArrayList<Entry>(page.size());
+
+        for (var i = 0; i < page.size(); i++) {
+            var id = page.get(i).getId();
+            var document = documents.get(i);
+            entries.add(new Entry((String) document.getFieldValue("id"), id.getBagId(), id.getObjectVersion(), SolrDocumentMapper.getFingerprint(document::getFieldValue)));
+        }
+
+        return entries;
+    }
+
+    // the entries of the TARs after the one with the given uuid (null for the first page), with the fingerprints of their
+    // documents
+    @UnitOfWork(readOnly = true)
+    public List<Entry> readTarPage(String after) {
+        var page = tarRepository.findPage(after, pageSize);
+        var entries = new ArrayList<Entry>(page.size());
+
+        for (var tar : page) {
+            var document = TarFragment.of(tar).toDocument();
+            entries.add(new Entry((String) document.getFieldValue("id"), tar.getTarUuid(), 0, SolrDocumentMapper.getFingerprint(document::getFieldValue)));
+        }
+
+        return entries;
+    }
+
+    @UnitOfWork
+    public void reindex(List<OcflObjectVersionId> ids) {
+        searchIndex.indexOcflObjectVersions(ocflObjectVersionRepository.findAllByIds(ids));
+    }
+
+    @UnitOfWork
+    public void reindexTars(List<String> tarUuids) {
+        for (var tarUuid : tarUuids) {
+            tarRepository.getTarById(tarUuid).ifPresent(searchIndex::indexTar);
+        }
+    }
+
+    // merges two sequences of entries that are both sorted by bag id and object version
+    static void diff(Iterator<Entry> database, Iterator<Entry> index, Differences differences) {
+        var databaseEntry = next(database, null, "database");
+        var indexEntry = next(index, null, "index");
+
+        while (databaseEntry != null || indexEntry != null) {
+            var order = databaseEntry == null ? 1 : indexEntry == null ? -1 : ORDER.compare(databaseEntry, indexEntry);
+
+            if (order < 0) {
+                differences.missing(databaseEntry);
+                databaseEntry = next(database, databaseEntry, "database");
+            }
+            else if (order > 0) {
+                differences.orphaned(indexEntry);
+                indexEntry = next(index, indexEntry, "index");
+            }
+            else {
+                if (databaseEntry.getFingerprint() == null || !databaseEntry.getFingerprint().equals(indexEntry.getFingerprint())) {
+                    differences.stale(databaseEntry);
+                }
+                else {
+                    differences.same(databaseEntry);
+                }
+
+                databaseEntry = next(database, databaseEntry, "database");
+                indexEntry = next(index, indexEntry, "index");
+            }
+        }
+    }
+
+    private static Entry next(Iterator<Entry> entries, Entry previous, String source) {
+        if (!entries.hasNext()) {
+            return null;
+        }
+
+        var entry = entries.next();
+
+        // the merge is only correct if both sides sort the same way, e.g. not with a database collation that ignores punctuation
+        if (previous != null && ORDER.compare(entry, previous) <= 0) {
+            throw new IllegalStateException(String.format("Entries from the %s are not in the expected order: %s after %s", source, entry, previous));
+        }
+
+        return entry;
+    }
+
+    private class DatabaseEntries implements Iterator<Entry> {
+        private List<Entry> page = List.of();
+        private int position = 0;
+        private boolean last = false;
+
+        @Override
+        public boolean hasNext() {
+            if (position == page.size() && !last) {
+                var previous = page.isEmpty() ? null : page.get(page.size() - 1);
+                page = readPage(previous == null ? null : new OcflObjectVersionId(previous.getBagId(), previous.getObjectVersion()));
+                position = 0;
+                last = page.size() < pageSize;
+            }
+
+            return position < page.size();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return page.get(position++);
+        }
+    }
+
+    private class DatabaseTarEntries implements Iterator<Entry> {
+        private List<Entry> page = List.of();
+        private int position = 0;
+        private boolean last = false;
+
+        @Override
+        public boolean hasNext() {
+            if (position == page.size() && !last) {
+                page = readTarPage(page.isEmpty() ? null : page.get(page.size() - 1).getBagId());
+                position = 0;
+                last = page.size() < pageSize;
+            }
+
+            return position < page.size();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return page.get(position++);
+        }
+    }
+
+    // deep paging with a cursor mark over the documents of one type, sorted like the database; without an object version
+    // field, all entries get object version 0
+    private class SolrEntries implements Iterator<Entry> {
+        private final String docType;
+        private final String keyField;
+        private final String objectVersionField;
+        private List<Entry> page = List.of();
+        private int position = 0;
+        private String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        private boolean last = false;
+
+        SolrEntries(String docType, String keyField, String objectVersionField) {
+            this.docType = docType;
+            this.keyField = keyField;
+            this.objectVersionField = objectVersionField;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position == page.size() && !last) {
+                readPage();
+            }
+
+            return position < page.size();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return page.get(position++);
+        }
+
+        private void readPage() {
+            var query = new SolrQuery("*:*")
+                .addFilterQuery("doc_type:" + docType)
+                .setFields("id", keyField, "fingerprint", "tar_fingerprint")
+                .setRows(pageSize)
+                .addSort(keyField, SolrQuery.ORDER.asc);
+
+            if (objectVersionField != null) {
+                query.addField(objectVersionField);
+                query.addSort(objectVersionField, SolrQuery.ORDER.asc);
+            }
+
+            query.addSort("id", SolrQuery.ORDER.asc);
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+
+            try {
+                var response = solrClient.query(collection, query);
+                var entries = new ArrayList<Entry>(response.getResults().size());
+
+                for (var document : response.getResults()) {
+                    var objectVersion = objectVersionField == null ? 0 : ((Number) document.getFieldValue(objectVersionField)).intValue();
+                    entries.add(new Entry((String) document.getFieldValue("id"), (String) document.getFieldValue(keyField), objectVersion,
+                        SolrDocumentMapper.getFingerprint(document::getFieldValue)));
+                }
+
+                page = entries;
+                position = 0;
+                last = cursorMark.equals(response.getNextCursorMark());
+                cursorMark = response.getNextCursorMark();
+            }
+            catch (SolrServerException | IOException | SolrException e) {
+                throw new SearchIndexException(String.format("Error reading the %s documents of Solr collection %s", docType, collection), e);
+            }
+        }
+    }
+
+    // counts the differences and, with repair, fixes them in batches of a page
+    private class Repairs implements Differences {
+        private final boolean repair;
+        private final Consumer<List<Entry>> reindexer;
+        private final List<Entry> toReindex = new ArrayList<>();
+        private final List<String> toDelete = new ArrayList<>();
+        private long entries;
+        private long documents;
+        private long missing;
+        private long stale;
+        private long orphaned;
+
+        Repairs(boolean repair, Consumer<List<Entry>> reindexer) {
+            this.repair = repair;
+            this.reindexer = reindexer;
+        }
+
+        @Override
+        public void same(Entry entry) {
+            entries++;
+            documents++;
+        }
+
+        @Override
+        public void missing(Entry entry) {
+            log.debug("Document {} is not in the index", entry.getId());
+            entries++;
+            missing++;
+            reindexLater(entry);
+        }
+
+        @Override
+        public void stale(Entry entry) {
+            log.debug("Document {} is out of date", entry.getId());
+            entries++;
+            documents++;
+            stale++;
+            reindexLater(entry);
+        }
+
+        @Override
+        public void orphaned(Entry entry) {
+            log.debug("Document {} has no OCFL object version or TAR", entry.getId());
+            documents++;
+            orphaned++;
+
+            if (repair) {
+                toDelete.add(entry.getId());
+
+                if (toDelete.size() >= pageSize) {
+                    delete();
+                }
+            }
+        }
+
+        void finish() {
+            if (!toReindex.isEmpty()) {
+                reindexer.accept(new ArrayList<>(toReindex));
+                toReindex.clear();
+            }
+
+            if (!toDelete.isEmpty()) {
+                delete();
+            }
+
+            if (repair) {
+                searchIndex.flush();
+            }
+
+            if (repair && orphaned > 0) {
+                commit();
+            }
+        }
+
+        private void reindexLater(Entry entry) {
+            if (repair) {
+                toReindex.add(entry);
+
+                if (toReindex.size() >= pageSize) {
+                    reindexer.accept(new ArrayList<>(toReindex));
+                    toReindex.clear();
+                }
+            }
+        }
+
+        private void delete() {
+            try {
+                solrClient.deleteById(collection, toDelete);
+                toDelete.clear();
+            }
+            catch (SolrServerException | IOException | SolrException e) {
+                throw new SearchIndexException(String.format("Error deleting %d documents from Solr collection %s", toDelete.size(), collection), e);
+            }
+        }
+
+        // the deletes are sent directly, not through the search index, so they are made visible here
+        private void commit() {
+            try {
+                solrClient.commit(collection, true, true, true);
+            }
+            catch (SolrServerException | IOException | SolrException e) {
+                throw new SearchIndexException("Error committing the deletes to Solr collection " + collection, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+// how TARs are represented in the Solr index
+public enum SolrIndexLayout {
+    // the fields of a TAR and its parts are part of the document of every OCFL object version in it, so a change of a
+    // TAR rewrites the documents of all its versions
+    EMBEDDED,
+    // every TAR has a document of its own, with doc_type tar, that holds its fields and parts; the documents of its
+    // OCFL object versions only refer to it by tar_id, and are joined with it at query time, e.g.
+    // {!join from=tar_id to=tar_id}tar_part_name:0001
+    JOINED
+}
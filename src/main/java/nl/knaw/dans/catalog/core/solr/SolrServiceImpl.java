@@ -16,36 +16,129 @@
 
 package nl.knaw.dans.catalog.core.solr;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
 import nl.knaw.dans.catalog.core.SearchIndex;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
 import nl.knaw.dans.catalog.db.Tar;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
 
 import java.io.IOException;
-import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Slf4j
-public class SolrServiceImpl implements SearchIndex {
+public class SolrServiceImpl implements SearchIndex, Managed {
+    private static final int FINGERPRINT_CHUNK_SIZE = 100;
+
     private final Http2SolrClient solrClient;
-    private final OcflObjectMetadataReader ocflObjectMetadataReader;
+    private final SolrDocumentMapper documentMapper;
     private final String collection;
+    private final SolrCommitCoalescer commitCoalescer;
+    private final SolrUpdatePipeline updatePipeline;
+    private final long shutdownTimeoutMillis;
+    private final ThreadPoolExecutor mappingExecutor;
+    private final int mappingChunkSize;
+    private final int commitWithinMillis;
+    private final boolean commitAfterUpdate;
+    private final Meter partialUpdates;
+    private final Meter partialUpdateFallbacks;
+    private final boolean skipUnchanged;
+    private final Meter unchanged;
+
+    // updates submitted since the last flush; flush waits for them
+    private final Queue<CompletableFuture<Void>> unflushed = new ConcurrentLinkedQueue<>();
 
-    public SolrServiceImpl(DdVaultCatalogConfiguration.SolrConfig solrConfig, OcflObjectMetadataReader ocflObjectMetadataReader) {
+    public SolrServiceImpl(DdVaultCatalogConfiguration.SolrConfig solrConfig, OcflObjectMetadataReader ocflObjectMetadataReader, MetricRegistry metricRegistry) {
         if (solrConfig != null) {
+            var commitStrategy = solrConfig.getCommitStrategy();
+            var updates = solrConfig.getUpdates();
+
             solrClient = new Http2SolrClient.Builder(solrConfig.getUrl()).build();
-            this.ocflObjectMetadataReader = ocflObjectMetadataReader;
+            this.documentMapper = new SolrDocumentMapper(ocflObjectMetadataReader, solrConfig.getLayout());
             this.collection = solrConfig.getSchema();
+            // also used to wait for visibility with the NONE and COMMIT_WITHIN strategies, which is done with a soft commit
+            this.commitCoalescer = new SolrCommitCoalescer(solrClient, collection, commitStrategy != SolrCommitStrategy.HARD);
+            this.updatePipeline = new SolrUpdatePipeline(solrClient, collection,
+                updates.getQueueCapacity(),
+                updates.getBatchSize(),
+                updates.getFlushInterval().toMilliseconds(),
+                updates.getMaxInFlight(),
+                commitStrategy == SolrCommitStrategy.COMMIT_WITHIN ? (int) solrConfig.getCommitWithin().toMilliseconds() : -1,
+                commitStrategy == SolrCommitStrategy.SOFT || commitStrategy == SolrCommitStrategy.HARD ? commitCoalescer : null,
+                metricRegistry);
+            this.shutdownTimeoutMillis = updates.getShutdownTimeout().toMilliseconds();
+
+            // a small pool of its own, so that mapping large TARs cannot take all cores from the request threads; when it
+            // is busy, callers map their chunks themselves instead of queueing them without bound
+            var threads = solrConfig.getMapping().getThreads();
+            var threadCount = new AtomicInteger();
+            this.mappingExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2), runnable -> {
+                var thread = new Thread(runnable, "solr-document-mapper-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            this.mappingChunkSize = solrConfig.getMapping().getChunkSize();
+            // for the atomic updates, which are sent directly instead of through the update pipeline
+            this.commitWithinMillis = commitStrategy == SolrCommitStrategy.COMMIT_WITHIN ? (int) solrConfig.getCommitWithin().toMilliseconds() : -1;
+            this.commitAfterUpdate = commitStrategy == SolrCommitStrategy.SOFT || commitStrategy == SolrCommitStrategy.HARD;
+            this.partialUpdates = metricRegistry.meter(MetricRegistry.name(SolrServiceImpl.class, "partial-updates"));
+            this.partialUpdateFallbacks = metricRegistry.meter(MetricRegistry.name(SolrServiceImpl.class, "partial-update-fallbacks"));
+            this.skipUnchanged = solrConfig.isSkipUnchanged();
+            this.unchanged = metricRegistry.meter(MetricRegistry.name(SolrServiceImpl.class, "unchanged"));
         }
         else {
             solrClient = null;
-            this.ocflObjectMetadataReader = null;
+            this.documentMapper = null;
             this.collection = null;
+            this.commitCoalescer = null;
+            this.updatePipeline = null;
+            this.shutdownTimeoutMillis = 0;
+            this.mappingExecutor = null;
+            this.mappingChunkSize = 0;
+            this.commitWithinMillis = -1;
+            this.commitAfterUpdate = false;
+            this.partialUpdates = null;
+            this.partialUpdateFallbacks = null;
+            this.skipUnchanged = false;
+            this.unchanged = null;
+        }
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (solrClient != null) {
+            mappingExecutor.shutdown();
+            updatePipeline.close(shutdownTimeoutMillis);
+            solrClient.close();
         }
     }
 
@@ -56,17 +149,56 @@ public class SolrServiceImpl implements SearchIndex {
             return;
         }
 
-        try {
-            var documents = tar.getOcflObjectVersions().stream()
-                .map(this::mapOcflObjectVersion)
-                .collect(Collectors.toList());
+        // a single document, whatever the number of versions in the TAR
+        if (documentMapper.isJoined()) {
+            log.debug("Indexing document of TAR {}", tar.getTarUuid());
+            updateChanged(documentMapper.mapTar(tar));
+            return;
+        }
+
+        var ocflObjectVersions = new ArrayList<>(tar.getOcflObjectVersions());
+
+        log.debug("Updating the TAR fields of {} documents for TAR {}", ocflObjectVersions.size(), tar.getTarUuid());
+
+        // the fields of the TAR are the same for all its documents; built here also because the session must not be used
+        // by the mapping threads
+        var fragment = TarFragment.of(tar);
 
-            log.debug("Indexing documents for TAR {}", tar.getTarUuid());
-            solrClient.add(collection, documents);
-            solrClient.commit(collection);
+        // so that the atomic updates, which bypass the update pipeline, are not overtaken by documents still queued in it
+        flush();
+
+        if (ocflObjectVersions.size() <= mappingChunkSize) {
+            updateTarFields(documentMapper.mapTarFields(ocflObjectVersions, fragment), () -> documentMapper.mapOcflObjectVersions(ocflObjectVersions, fragment));
+            return;
         }
-        catch (SolrServerException | IOException e) {
-            log.error("Error indexing TAR {}", tar.getTarUuid(), e);
+
+        // each chunk is sent as soon as it is mapped, instead of after the whole TAR
+        var chunks = new ArrayList<Future<?>>();
+
+        for (var start = 0; start < ocflObjectVersions.size(); start += mappingChunkSize) {
+            var chunk = ocflObjectVersions.subList(start, Math.min(start + mappingChunkSize, ocflObjectVersions.size()));
+            chunks.add(mappingExecutor.submit(() -> updateTarFields(documentMapper.mapTarFields(chunk, fragment), () -> documentMapper.mapOcflObjectVersions(chunk, fragment))));
+        }
+
+        for (var chunk : chunks) {
+            waitFor(chunk);
+        }
+    }
+
+    private void waitFor(Future<?> future) {
+        try {
+            future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchIndexException("Interrupted while mapping documents", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new SearchIndexException("Error mapping documents", e.getCause());
         }
     }
 
@@ -77,76 +209,176 @@ public class SolrServiceImpl implements SearchIndex {
             return;
         }
 
-        var doc = mapOcflObjectVersion(ocflObjectVersion);
+        var doc = documentMapper.mapOcflObjectVersion(ocflObjectVersion);
+
+        log.debug("Indexing document with ID {}", ocflObjectVersion.getId());
+        update(List.of(doc));
+    }
+
+    @Override
+    public void indexOcflObjectVersions(Collection<OcflObjectVersion> ocflObjectVersions) {
+        if (solrClient == null) {
+            log.warn("Solr is not configured, skipping indexing of {} OcflObjectVersions", ocflObjectVersions.size());
+            return;
+        }
+
+        if (ocflObjectVersions.isEmpty()) {
+            return;
+        }
+
+        var documents = documentMapper.mapOcflObjectVersions(ocflObjectVersions);
+
+        log.debug("Indexing {} OcflObjectVersion documents", documents.size());
+        updateChanged(documents);
+    }
+
+    private void updateChanged(List<SolrInputDocument> documents) {
+        var changed = skipUnchanged ? withoutUnchanged(documents) : documents;
+
+        if (!changed.isEmpty()) {
+            update(changed);
+        }
+    }
+
+    // leaves out the documents of which Solr has a version with the same fingerprint; real-time get also sees the
+    // documents that were sent but not committed yet
+    private List<SolrInputDocument> withoutUnchanged(List<SolrInputDocument> documents) {
+        var indexed = new HashMap<String, String>();
+        var params = new ModifiableSolrParams();
+        params.set(CommonParams.FL, "id,fingerprint,tar_fingerprint");
 
         try {
-            log.debug("Indexing document with ID {}", ocflObjectVersion.getId());
-            solrClient.add(collection, doc);
-            solrClient.commit(collection);
+            // in chunks, because the ids are sent in the URL
+            for (var start = 0; start < documents.size(); start += FINGERPRINT_CHUNK_SIZE) {
+                var ids = documents.subList(start, Math.min(start + FINGERPRINT_CHUNK_SIZE, documents.size())).stream()
+                    .map(document -> (String) document.getFieldValue("id"))
+                    .collect(Collectors.toList());
+
+                for (var document : solrClient.getById(collection, ids, params)) {
+                    indexed.put((String) document.getFieldValue("id"), SolrDocumentMapper.getFingerprint(document::getFieldValue));
+                }
+            }
         }
-        catch (SolrServerException | IOException e) {
-            log.error("Error indexing OcflObjectVersion {}", ocflObjectVersion.getId(), e);
-            e.printStackTrace();
-        }
-    }
-
-    SolrInputDocument mapOcflObjectVersion(OcflObjectVersion ocflObjectVersion) {
-        var doc = new SolrInputDocument();
-        var id = String.format("%s/%s", ocflObjectVersion.getId().getBagId(), ocflObjectVersion.getId().getObjectVersion());
-
-        doc.setField("id", id);
-        doc.setField("bag_id", ocflObjectVersion.getId().getBagId());
-        doc.setField("object_version", ocflObjectVersion.getId().getObjectVersion());
-        doc.setField("nbn", ocflObjectVersion.getNbn());
-        doc.setField("dataverse_pid", ocflObjectVersion.getDataversePid());
-        doc.setField("dataverse_pid_version", ocflObjectVersion.getDataversePidVersion());
-        doc.setField("datastation", ocflObjectVersion.getDataSupplier());
-        doc.setField("data_supplier", ocflObjectVersion.getDataSupplier());
-        doc.setField("sword_token", ocflObjectVersion.getSwordToken());
-        doc.setField("other_id", ocflObjectVersion.getOtherId());
-        doc.setField("other_id_version", ocflObjectVersion.getOtherIdVersion());
-        doc.setField("filepid_to_local_path", ocflObjectVersion.getFilePidToLocalPath());
-        doc.setField("ocfl_object_path", ocflObjectVersion.getOcflObjectPath());
-        doc.setField("export_timestamp", formatDate(ocflObjectVersion.getExportTimestamp()));
-
-        // make the ID's searchable
-        doc.addField("_text_", ocflObjectVersion.getId().getBagId().replace("urn:uuid:", ""));
-        doc.addField("_text_", ocflObjectVersion.getNbn().replace("urn:nbn:nl:ui:", ""));
-
-        if (ocflObjectVersion.getTar() != null) {
-            doc.setField("tar_id", ocflObjectVersion.getTar().getTarUuid());
-            doc.setField("tar_vault_path", ocflObjectVersion.getTar().getVaultPath());
-            doc.setField("tar_archival_date", formatDate(ocflObjectVersion.getTar().getArchivalDate()));
-
-            for (var tarPart : ocflObjectVersion.getTar().getTarParts()) {
-                doc.addField("tar_part_name", tarPart.getPartName());
-                doc.addField("tar_part_checksum_algorithm", tarPart.getChecksumAlgorithm());
-                doc.addField("tar_part_checksum_value", tarPart.getChecksumValue());
+        catch (SolrServerException | IOException | SolrException e) {
+            log.warn("Could not get the fingerprints of {} documents from Solr, sending all of them", documents.size(), e);
+            return documents;
+        }
+
+        var changed = new ArrayList<SolrInputDocument>(documents.size());
+
+        for (var document : documents) {
+            var fingerprint = SolrDocumentMapper.getFingerprint(document::getFieldValue);
+
+            if (fingerprint == null || !fingerprint.equals(indexed.get((String) document.getFieldValue("id")))) {
+                changed.add(document);
             }
         }
 
-        var metadata = ocflObjectMetadataReader.readMetadata(ocflObjectVersion.getMetadata());
+        unchanged.mark(documents.size() - changed.size());
+        log.debug("{} of {} documents are unchanged", documents.size() - changed.size(), documents.size());
+        return changed;
+    }
 
-        for (var entry : metadata.getMetadata().entrySet()) {
-            var fieldName = entry.getKey() + "_txt";
+    @Override
+    public void indexTarMembership(Collection<OcflObjectVersion> ocflObjectVersions) {
+        if (solrClient == null) {
+            log.warn("Solr is not configured, skipping indexing of the TARs of {} OcflObjectVersions", ocflObjectVersions.size());
+            return;
+        }
 
-            for (var value : entry.getValue()) {
-                doc.addField(fieldName, value);
+        if (ocflObjectVersions.isEmpty()) {
+            return;
+        }
+
+        log.debug("Updating the TAR fields of {} OcflObjectVersion documents", ocflObjectVersions.size());
+        flush();
+        updateTarFields(documentMapper.mapTarFields(ocflObjectVersions), () -> documentMapper.mapOcflObjectVersions(ocflObjectVersions));
+    }
+
+    @Override
+    public boolean isTarIndexedWithItsVersions() {
+        return documentMapper == null || !documentMapper.isJoined();
+    }
+
+    // sends atomic updates of the TAR fields and waits for them; if a document is not in the index yet Solr rejects them
+    // with a conflict, and the full documents are indexed instead
+    private void updateTarFields(List<SolrInputDocument> partialDocuments, Supplier<List<SolrInputDocument>> fullDocuments) {
+        var request = new UpdateRequest();
+        request.add(partialDocuments);
+
+        if (commitWithinMillis >= 0) {
+            request.setCommitWithin(commitWithinMillis);
+        }
+
+        try {
+            request.process(solrClient, collection);
+            partialUpdates.mark(partialDocuments.size());
+
+            if (commitAfterUpdate) {
+                commitCoalescer.requestCommit();
+            }
+        }
+        catch (SolrException e) {
+            if (e.code() != SolrException.ErrorCode.CONFLICT.code) {
+                throw new SearchIndexException(String.format("Error updating the TAR fields of %d documents in Solr collection %s", partialDocuments.size(), collection), e);
             }
+
+            log.debug("Not all of {} documents are in the index yet, indexing them in full", partialDocuments.size());
+            partialUpdateFallbacks.mark();
+            update(fullDocuments.get());
+        }
+        catch (SolrServerException | IOException e) {
+            throw new SearchIndexException(String.format("Error updating the TAR fields of %d documents in Solr collection %s", partialDocuments.size(), collection), e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (solrClient == null) {
+            return;
+        }
+
+        var pending = new ArrayList<CompletableFuture<Void>>();
+
+        for (var future = unflushed.poll(); future != null; future = unflushed.poll()) {
+            pending.add(future);
         }
 
-        // specific metadata we want to store so we can show it in search results
-        doc.addField("title", metadata.getTitle());
-        doc.addField("description", metadata.getDescription());
+        updatePipeline.flush();
 
-        return doc;
+        // with concurrent writers this may also report a failure of another writer's documents; indexing is
+        // idempotent, so retrying them is harmless
+        join(CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])));
     }
 
-    String formatDate(OffsetDateTime date) {
-        if (date == null) {
-            return null;
+    // requests a commit that is shared with the other writers waiting for one, see SolrCommitCoalescer
+    @Override
+    public void waitUntilVisible() {
+        if (solrClient == null) {
+            return;
+        }
+
+        flush();
+        join(commitCoalescer.requestCommit());
+    }
+
+    private void update(Collection<SolrInputDocument> documents) {
+        // writers do not wait for Solr, unless they call flush or waitUntilVisible; updates that were sent successfully
+        // need not be kept, so that long runs without a flush (such as a reindex) do not accumulate them
+        unflushed.removeIf(future -> future.isDone() && !future.isCompletedExceptionally());
+        unflushed.add(updatePipeline.submit(documents));
+    }
+
+    private void join(CompletableFuture<Void> future) {
+        try {
+            future.join();
         }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof SearchIndexException) {
+                throw (SearchIndexException) e.getCause();
+            }
 
-        return date.format(DateTimeFormatter.ISO_DATE_TIME);
+            throw new SearchIndexException("Error updating the search index", e.getCause());
+        }
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.util.AsyncListener;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Collects documents from all writers in a bounded queue and sends them to Solr in batches, flushed when a batch is
+// full or flushInterval has passed since its first document. Up to maxInFlight batches are sent concurrently. When
+// Solr cannot keep up the queue fills and submit blocks, which pushes back on the writers.
+@Slf4j
+class SolrUpdatePipeline {
+    private static final long POLL_MILLIS = 10;
+
+    private final Http2SolrClient solrClient;
+    private final String collection;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxInFlight;
+    private final int commitWithinMillis;
+    private final SolrCommitCoalescer commitCoalescer;
+
+    private final BlockingQueue<PendingDocument> queue;
+    private final Semaphore inFlight;
+    private final Thread flusher;
+    private final Histogram batchSizes;
+    private final Timer flushLatency;
+
+    private volatile boolean running = true;
+    private volatile boolean flushRequested = false;
+
+    @Value
+    private static class PendingDocument {
+        SolrInputDocument document;
+        CompletableFuture<Void> sent;
+    }
+
+    // commitWithinMillis is ignored when negative, commitCoalescer is asked for a commit after each batch when not null
+    SolrUpdatePipeline(Http2SolrClient solrClient, String collection, int queueCapacity, int batchSize, long flushIntervalMillis, int maxInFlight, int commitWithinMillis,
+        SolrCommitCoalescer commitCoalescer, MetricRegistry metricRegistry) {
+        this.solrClient = solrClient;
+        this.collection = collection;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.maxInFlight = maxInFlight;
+        this.commitWithinMillis = commitWithinMillis;
+        this.commitCoalescer = commitCoalescer;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inFlight = new Semaphore(maxInFlight);
+
+        metricRegistry.gauge(MetricRegistry.name(SolrUpdatePipeline.class, "queue-depth"), () -> (Gauge<Integer>) queue::size);
+        metricRegistry.gauge(MetricRegistry.name(SolrUpdatePipeline.class, "in-flight"), () -> (Gauge<Integer>) () -> maxInFlight - inFlight.availablePermits());
+        this.batchSizes = metricRegistry.histogram(MetricRegistry.name(SolrUpdatePipeline.class, "batch-size"));
+        this.flushLatency = metricRegistry.timer(MetricRegistry.name(SolrUpdatePipeline.class, "flush-latency"));
+
+        this.flusher = new Thread(this::run, "solr-update-pipeline");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // blocks while the queue is full; the future completes when Solr has accepted all documents
+    CompletableFuture<Void> submit(Collection<SolrInputDocument> documents) {
+        if (!running) {
+            throw new IllegalStateException("Solr update pipeline is closed");
+        }
+
+        var futures = new ArrayList<CompletableFuture<Void>>(documents.size());
+
+        try {
+            for (var document : documents) {
+                var pending = new PendingDocument(document, new CompletableFuture<>());
+                queue.put(pending);
+                futures.add(pending.getSent());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchIndexException("Interrupted while waiting for room in the Solr update queue", e);
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    // sends the documents that are queued now without waiting for the batch to fill up
+    void flush() {
+        flushRequested = true;
+    }
+
+    // stops accepting documents, sends what is queued and waits for the requests in flight
+    void close(long timeoutMillis) throws InterruptedException {
+        running = false;
+        flusher.join(timeoutMillis);
+
+        if (!inFlight.tryAcquire(maxInFlight, timeoutMillis, TimeUnit.MILLISECONDS)) {
+            log.warn("Solr update requests still in flight after {} ms", timeoutMillis);
+        }
+
+        if (!queue.isEmpty()) {
+            log.error("Closing Solr update pipeline with {} documents not sent", queue.size());
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    flushRequested = false;
+                    continue;
+                }
+
+                var batch = new ArrayList<PendingDocument>(batchSize);
+                batch.add(first);
+                var deadline = System.nanoTime() + flushIntervalNanos;
+
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+
+                    if (batch.size() >= batchSize || flushRequested || !running || System.nanoTime() >= deadline) {
+                        break;
+                    }
+
+                    var next = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+
+                send(batch);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Solr update pipeline interrupted with {} documents queued", queue.size());
+                return;
+            }
+        }
+    }
+
+    private void send(List<PendingDocument> batch) throws InterruptedException {
+        inFlight.acquire();
+
+        var request = new UpdateRequest();
+        request.add(batch.stream().map(PendingDocument::getDocument).collect(Collectors.toList()));
+
+        if (commitWithinMillis >= 0) {
+            request.setCommitWithin(commitWithinMillis);
+        }
+
+        batchSizes.update(batch.size());
+        var timer = flushLatency.time();
+
+        try {
+            solrClient.asyncRequest(request, collection, new AsyncListener<>() {
+
+                @Override
+                public void onSuccess(NamedList<Object> response) {
+                    timer.stop();
+                    inFlight.release();
+                    batch.forEach(pending -> pending.getSent().complete(null));
+
+                    if (commitCoalescer != null) {
+                        commitCoalescer.requestCommit();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    timer.stop();
+                    inFlight.release();
+                    log.error("Error sending {} documents to Solr collection {}", batch.size(), collection, throwable);
+
+                    var exception = new SearchIndexException(String.format("Error sending %d documents to Solr collection %s", batch.size(), collection), throwable);
+                    batch.forEach(pending -> pending.getSent().completeExceptionally(exception));
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            timer.stop();
+            inFlight.release();
+
+            var exception = new SearchIndexException(String.format("Error sending %d documents to Solr collection %s", batch.size(), collection), e);
+            batch.forEach(pending -> pending.getSent().completeExceptionally(exception));
+        }
+    }
+}
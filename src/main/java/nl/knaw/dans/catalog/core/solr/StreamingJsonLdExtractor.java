@@ -0,0 +1,547 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader.OcflObjectMetadata;
+import nl.knaw.dans.catalog.core.solr.vocabulary.DVCitation;
+import nl.knaw.dans.catalog.core.solr.vocabulary.ORE;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jena.datatypes.DatatypeFormatException;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.vocabulary.DCTerms;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// extracts the same search fields as the Jena reader, but reads the JSON tokens directly instead of building an RDF
+// model; throws an UnsupportedJsonLdException for JSON-LD features it does not implement, so that the caller can fall
+// back to Jena
+class StreamingJsonLdExtractor {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+    private static final String AGGREGATION = ORE.Aggregation.getURI();
+    private static final String TITLE = DCTerms.title.getURI();
+    private static final String DS_DESCRIPTION = DVCitation.dsDescription.getURI();
+    private static final String DS_DESCRIPTION_VALUE = DVCitation.dsDescriptionValue.getURI();
+
+    // JSON-LD turns integers of this size or more into doubles
+    private static final BigInteger MAX_INTEGER = BigInteger.TEN.pow(21);
+
+    // documents mostly share one and the same context, so only a few distinct ones are expected
+    private static final long CONTEXT_CACHE_SIZE = 100;
+
+    private final BundledContexts bundledContexts;
+    private final ObjectMapper objectMapper;
+    private final Map<String, JsonLdContext> remoteContexts = new ConcurrentHashMap<>();
+    // processed contexts, keyed by a hash of their text
+    private final Cache<String, JsonLdContext> contexts = Caffeine.newBuilder().maximumSize(CONTEXT_CACHE_SIZE).build();
+
+    StreamingJsonLdExtractor(BundledContexts bundledContexts, ObjectMapper objectMapper) {
+        this.bundledContexts = bundledContexts;
+        this.objectMapper = objectMapper;
+    }
+
+    OcflObjectMetadata extract(String json) throws UnsupportedJsonLdException {
+        try {
+            return new Extraction().read(json);
+        }
+        catch (IOException e) {
+            // not valid JSON; left to Jena to report
+            throw new UnsupportedJsonLdException("Cannot read JSON", e);
+        }
+    }
+
+    // an absolute IRI, as Titanium, with which Jena reads JSON-LD, checks it before turning it into RDF
+    private static boolean isWellFormed(String iri) {
+        try {
+            return URI.create(iri).isAbsolute();
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private JsonLdContext getRemoteContext(String url) throws UnsupportedJsonLdException {
+        var context = remoteContexts.get(url);
+
+        if (context != null) {
+            return context;
+        }
+
+        var definition = bundledContexts.getDefinition(url);
+
+        if (definition == null) {
+            return null;
+        }
+
+        try (var parser = objectMapper.treeAsTokens(definition)) {
+            parser.nextToken();
+            context = JsonLdContext.EMPTY.apply(parser, this::getRemoteContext);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Cannot read bundled context " + url, e);
+        }
+
+        remoteContexts.put(url, context);
+        return context;
+    }
+
+    // the context at the current token of a parser that reads json
+    private JsonLdContext readContext(JsonParser parser, String json) throws IOException, UnsupportedJsonLdException {
+        var start = (int) parser.getTokenLocation().getCharOffset();
+        parser.skipChildren();
+        var text = json.substring(start, (int) parser.getCurrentLocation().getCharOffset());
+
+        var key = OcflObjectMetadataReader.hash(text);
+        var context = contexts.getIfPresent(key);
+
+        if (context == null) {
+            try (var contextParser = JSON_FACTORY.createParser(text)) {
+                contextParser.nextToken();
+                context = JsonLdContext.EMPTY.apply(contextParser, this::getRemoteContext);
+            }
+
+            contexts.put(key, context);
+        }
+
+        return context;
+    }
+
+    // the @context of the top-level object, wherever it is in the object; null if there is none
+    private JsonLdContext findContext(JsonParser parser, String json) throws IOException, UnsupportedJsonLdException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var key = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("@context".equals(key)) {
+                return readContext(parser, json);
+            }
+
+            parser.skipChildren();
+        }
+
+        return null;
+    }
+
+    // the statements about one subject, as far as they are needed for the title and description
+    private static class Node {
+        private final Set<String> types = new HashSet<>();
+        private final Set<String> titles = new HashSet<>();
+        private final Set<String> descriptions = new HashSet<>();
+        private final Set<String> descriptionValues = new HashSet<>();
+
+        Node merge(Node other) {
+            types.addAll(other.types);
+            titles.addAll(other.titles);
+            descriptions.addAll(other.descriptions);
+            descriptionValues.addAll(other.descriptionValues);
+            return this;
+        }
+    }
+
+    // the value of a property: a literal or a reference to a node
+    private static class Item {
+        private final String literal;
+        private final String id;
+
+        private Item(String literal, String id) {
+            this.literal = literal;
+            this.id = id;
+        }
+    }
+
+    private class Extraction {
+        private final Map<String, Set<String>> metadata = new HashMap<>();
+        private final Map<String, Node> nodes = new HashMap<>();
+        private JsonLdContext context = JsonLdContext.EMPTY;
+        private int blankNodes;
+
+        OcflObjectMetadata read(String json) throws IOException, UnsupportedJsonLdException {
+            try (var parser = JSON_FACTORY.createParser(json)) {
+                var token = parser.nextToken();
+
+                if (token == JsonToken.START_ARRAY) {
+                    readNodes(parser);
+                    return build();
+                }
+
+                if (token != JsonToken.START_OBJECT) {
+                    throw new UnsupportedJsonLdException("Document is not an object or array");
+                }
+
+                // the context applies to the whole object, so it has to be known before any other key is read
+                if (parser.nextToken() == JsonToken.FIELD_NAME && "@context".equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    context = readContext(parser, json);
+                    readNode(parser, true);
+                    return build();
+                }
+            }
+
+            try (var parser = JSON_FACTORY.createParser(json)) {
+                var found = findContext(parser, json);
+
+                if (found != null) {
+                    context = found;
+                }
+            }
+
+            try (var parser = JSON_FACTORY.createParser(json)) {
+                parser.nextToken();
+                readNode(parser, true);
+                return build();
+            }
+        }
+
+        private void readNodes(JsonParser parser) throws IOException, UnsupportedJsonLdException {
+            var token = parser.currentToken();
+
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    readNodes(parser);
+                }
+            }
+            else if (token == JsonToken.START_OBJECT) {
+                if (readNode(parser, false).literal != null) {
+                    throw new UnsupportedJsonLdException("Value object outside of a property");
+                }
+            }
+            else if (token != JsonToken.VALUE_NULL) {
+                throw new UnsupportedJsonLdException("Unsupported node " + token);
+            }
+        }
+
+        // reads the object at the current token, which is either a node object or a value object; returns null for the
+        // top-level object of a document with a @graph
+        private Item readNode(JsonParser parser, boolean top) throws IOException, UnsupportedJsonLdException {
+            var node = new Node();
+            String id = null;
+            String value = null;
+            var hasValue = false;
+            var stringValue = false;
+            var hasGraph = false;
+            var hasProperties = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var key = parser.getCurrentName();
+                parser.nextToken();
+                var keyword = context.keyword(key);
+
+                if (keyword == null) {
+                    var predicate = context.expandVocab(key);
+
+                    // JSON-LD drops properties without an IRI or with one that is not well-formed, and Jena does not
+                    // accept blank node predicates
+                    if (predicate == null || predicate.startsWith("_:") || !isWellFormed(predicate)) {
+                        parser.skipChildren();
+                        continue;
+                    }
+
+                    readValues(parser, node, context.term(key), predicate);
+                    hasProperties = true;
+                    continue;
+                }
+
+                switch (keyword) {
+                    case "@context":
+                        if (!top) {
+                            throw new UnsupportedJsonLdException("Embedded @context");
+                        }
+                        // already applied
+                        parser.skipChildren();
+                        break;
+                    case "@id":
+                        id = context.expandId(requireString(parser, keyword));
+                        break;
+                    case "@type":
+                        readTypes(parser, node);
+                        break;
+                    case "@value":
+                        stringValue = parser.currentToken() == JsonToken.VALUE_STRING;
+                        value = readLiteral(parser, null);
+                        hasValue = true;
+                        break;
+                    case "@language":
+                    case "@direction":
+                    case "@index":
+                        parser.skipChildren();
+                        break;
+                    case "@graph":
+                        if (!top) {
+                            throw new UnsupportedJsonLdException("Nested @graph");
+                        }
+                        readNodes(parser);
+                        hasGraph = true;
+                        break;
+                    default:
+                        throw new UnsupportedJsonLdException("Unsupported keyword " + keyword);
+                }
+            }
+
+            if (hasValue) {
+                if (id != null || hasProperties || hasGraph) {
+                    throw new UnsupportedJsonLdException("Invalid value object");
+                }
+
+                // the type of a value object is its datatype
+                if (node.types.size() > 1) {
+                    throw new UnsupportedJsonLdException("Value with more than one type");
+                }
+
+                for (var type : node.types) {
+                    value = getTypedValue(value, type, stringValue);
+                }
+
+                return new Item(value, null);
+            }
+
+            if (hasGraph) {
+                // anything besides the @graph would make it a named graph, which Jena does not read into the model
+                if (id != null || hasProperties || !node.types.isEmpty()) {
+                    throw new UnsupportedJsonLdException("Named graph");
+                }
+
+                return new Item(null, null);
+            }
+
+            if (id == null) {
+                // a space cannot occur in a blank node label of the document
+                id = "_: " + ++blankNodes;
+            }
+            else if (!id.startsWith("_:") && !isWellFormed(id)) {
+                // JSON-LD would drop all statements about it
+                throw new UnsupportedJsonLdException("Node IRI " + id + " is not well-formed");
+            }
+
+            nodes.merge(id, node, Node::merge);
+            return new Item(null, id);
+        }
+
+        private void readTypes(JsonParser parser, Node node) throws IOException, UnsupportedJsonLdException {
+            if (parser.currentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    node.types.add(expandType(requireString(parser, "@type")));
+                }
+            }
+            else {
+                node.types.add(expandType(requireString(parser, "@type")));
+            }
+        }
+
+        private String expandType(String type) {
+            var iri = context.expandVocab(type);
+            return iri == null ? type : iri;
+        }
+
+        private void readValues(JsonParser parser, Node node, JsonLdContext.Term term, String predicate) throws IOException, UnsupportedJsonLdException {
+            switch (parser.currentToken()) {
+                case START_ARRAY:
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        readValues(parser, node, term, predicate);
+                    }
+                    break;
+                case START_OBJECT:
+                    var item = readNode(parser, false);
+
+                    if (item.id != null) {
+                        addReference(node, predicate, item.id);
+                    }
+                    else {
+                        addLiteral(node, predicate, item.literal);
+                    }
+                    break;
+                case VALUE_STRING:
+                    if (term != null && term.isReference()) {
+                        addReference(node, predicate, context.expandId(parser.getText()));
+                        break;
+                    }
+                    // fall through
+                default:
+                    addLiteral(node, predicate, readLiteral(parser, term));
+            }
+        }
+
+        private String readLiteral(JsonParser parser, JsonLdContext.Term term) throws IOException, UnsupportedJsonLdException {
+            var token = parser.currentToken();
+
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+
+            if (term != null && term.isTyped()) {
+                throw new UnsupportedJsonLdException("Typed value of " + parser.getCurrentName());
+            }
+
+            switch (token) {
+                case VALUE_STRING:
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    return parser.getText();
+                case VALUE_NUMBER_INT:
+                    var number = parser.getBigIntegerValue();
+
+                    if (number.abs().compareTo(MAX_INTEGER) >= 0) {
+                        throw new UnsupportedJsonLdException("Integer value " + number);
+                    }
+
+                    return number.toString();
+                default:
+                    // doubles are presented by Jena in their own way, and JSON literals are not supported
+                    throw new UnsupportedJsonLdException("Unsupported value " + token);
+            }
+        }
+
+        // the value of a literal with a datatype as Jena presents it; null if JSON-LD drops it
+        private String getTypedValue(String value, String datatype, boolean stringValue) throws UnsupportedJsonLdException {
+            if (value == null || XSD_STRING.equals(datatype)) {
+                return value;
+            }
+
+            if ("@json".equals(datatype) || !stringValue) {
+                // JSON-LD writes these values in its own way
+                throw new UnsupportedJsonLdException("Typed value " + datatype);
+            }
+
+            // JSON-LD drops literals of which the datatype is not an absolute IRI, e.g. the checksums in Dataverse exports
+            if (!isWellFormed(datatype)) {
+                return null;
+            }
+
+            try {
+                return NodeFactory.createLiteral(value, TypeMapper.getInstance().getSafeTypeByName(datatype)).getLiteralValue().toString();
+            }
+            catch (DatatypeFormatException e) {
+                throw new UnsupportedJsonLdException("Invalid value of type " + datatype, e);
+            }
+        }
+
+        private void addLiteral(Node node, String predicate, String value) throws UnsupportedJsonLdException {
+            if (value == null) {
+                return;
+            }
+
+            if (DS_DESCRIPTION.equals(predicate)) {
+                throw new UnsupportedJsonLdException("Literal dsDescription");
+            }
+
+            metadata.computeIfAbsent(OcflObjectMetadataReader.getFieldName(predicate), k -> new HashSet<>())
+                .add(value);
+
+            if (TITLE.equals(predicate)) {
+                node.titles.add(value);
+            }
+            else if (DS_DESCRIPTION_VALUE.equals(predicate)) {
+                node.descriptionValues.add(value);
+            }
+        }
+
+        private void addReference(Node node, String predicate, String id) throws UnsupportedJsonLdException {
+            // JSON-LD drops references that are not well-formed
+            if (!id.startsWith("_:") && !isWellFormed(id)) {
+                return;
+            }
+
+            if (TITLE.equals(predicate) || DS_DESCRIPTION_VALUE.equals(predicate)) {
+                throw new UnsupportedJsonLdException("Resource as value of " + predicate);
+            }
+
+            if (DS_DESCRIPTION.equals(predicate)) {
+                node.descriptions.add(id);
+            }
+        }
+
+        private String requireString(JsonParser parser, String keyword) throws IOException, UnsupportedJsonLdException {
+            if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                throw new UnsupportedJsonLdException("Unsupported value of " + keyword);
+            }
+
+            return parser.getText();
+        }
+
+        private OcflObjectMetadata build() throws UnsupportedJsonLdException {
+            // the result may be cached and shared between threads, so it is made unmodifiable
+            metadata.replaceAll((name, values) -> Collections.unmodifiableSet(values));
+
+            var builder = OcflObjectMetadata.builder()
+                .metadata(Collections.unmodifiableMap(metadata));
+
+            var aggregations = new ArrayList<Node>();
+
+            for (var node : nodes.values()) {
+                if (node.types.contains(AGGREGATION)) {
+                    aggregations.add(node);
+                }
+            }
+
+            // Jena would pick any one of them
+            if (aggregations.size() > 1) {
+                throw new UnsupportedJsonLdException("More than one aggregation");
+            }
+
+            if (aggregations.size() == 1) {
+                var aggregation = aggregations.get(0);
+                var descriptions = new HashSet<String>();
+
+                for (var description : aggregation.descriptions) {
+                    var item = nodes.get(description);
+                    var value = item == null ? null : join(item.descriptionValues);
+
+                    if (value != null) {
+                        descriptions.add(value);
+                    }
+                }
+
+                builder.title(join(aggregation.titles));
+                builder.description(join(descriptions));
+            }
+
+            return builder.build();
+        }
+
+        // the same presentation as the Jena reader: sorted, to get deterministic results
+        private String join(Collection<String> values) {
+            if (values.isEmpty()) {
+                return null;
+            }
+
+            var list = new ArrayList<>(values);
+            list.sort(String::compareTo);
+
+            return StringUtils.join(list, "; ");
+        }
+    }
+}
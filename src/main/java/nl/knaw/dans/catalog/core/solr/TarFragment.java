@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import nl.knaw.dans.catalog.db.Tar;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// the fields that all documents of the OCFL object versions in a TAR have in common; built once per TAR and shared,
+// read-only, by its documents and by the threads that map them
+class TarFragment {
+    private static final List<String> FIELDS = List.of(
+        "tar_id", "tar_vault_path", "tar_archival_date", "tar_part_name", "tar_part_checksum_algorithm", "tar_part_checksum_value");
+
+    private final String tarId;
+    private final String vaultPath;
+    private final String archivalDate;
+    private final List<String> partNames;
+    private final List<String> checksumAlgorithms;
+    private final List<String> checksumValues;
+
+    private TarFragment(Tar tar) {
+        var parts = tar.getTarParts();
+        var partNames = new ArrayList<String>(parts.size());
+        var checksumAlgorithms = new ArrayList<String>(parts.size());
+        var checksumValues = new ArrayList<String>(parts.size());
+
+        for (var part : parts) {
+            partNames.add(part.getPartName());
+            checksumAlgorithms.add(part.getChecksumAlgorithm());
+            checksumValues.add(part.getChecksumValue());
+        }
+
+        this.tarId = tar.getTarUuid();
+        this.vaultPath = tar.getVaultPath();
+        this.archivalDate = SolrDocumentMapper.formatDate(tar.getArchivalDate());
+        this.partNames = Collections.unmodifiableList(partNames);
+        this.checksumAlgorithms = Collections.unmodifiableList(checksumAlgorithms);
+        this.checksumValues = Collections.unmodifiableList(checksumValues);
+    }
+
+    static TarFragment of(Tar tar) {
+        return new TarFragment(tar);
+    }
+
+    String getTarId() {
+        return tarId;
+    }
+
+    // the document of the TAR itself, for the JOINED layout
+    SolrInputDocument toDocument() {
+        var doc = new SolrInputDocument();
+        doc.setField("id", getDocumentId(tarId));
+        doc.setField("doc_type", SolrDocumentMapper.DOC_TYPE_TAR);
+        applyTo(doc);
+        SolrDocumentMapper.addFingerprint(doc);
+        return doc;
+    }
+
+    static boolean isTarField(String name) {
+        return FIELDS.contains(name);
+    }
+
+    static String getDocumentId(String tarId) {
+        return "tar:" + tarId;
+    }
+
+    // the lists are set as the values of the multivalued fields, not copied, so fields must not be added to them later
+    void applyTo(SolrInputDocument doc) {
+        doc.setField("tar_id", tarId);
+        doc.setField("tar_vault_path", vaultPath);
+        doc.setField("tar_archival_date", archivalDate);
+
+        if (!partNames.isEmpty()) {
+            doc.setField("tar_part_name", partNames);
+            doc.setField("tar_part_checksum_algorithm", checksumAlgorithms);
+            doc.setField("tar_part_checksum_value", checksumValues);
+        }
+    }
+
+    // the same fields, as an atomic update of an existing document; fields without a value are removed from it
+    void applyAsUpdateTo(SolrInputDocument doc) {
+        doc.setField("tar_id", set(tarId));
+        doc.setField("tar_vault_path", set(vaultPath));
+        doc.setField("tar_archival_date", set(archivalDate));
+        doc.setField("tar_part_name", set(partNames.isEmpty() ? null : partNames));
+        doc.setField("tar_part_checksum_algorithm", set(checksumAlgorithms.isEmpty() ? null : checksumAlgorithms));
+        doc.setField("tar_part_checksum_value", set(checksumValues.isEmpty() ? null : checksumValues));
+    }
+
+    // an atomic update that removes the TAR fields from an existing document
+    static void removeFrom(SolrInputDocument doc) {
+        for (var field : FIELDS) {
+            doc.setField(field, set(null));
+        }
+    }
+
+    static Map<String, Object> set(Object value) {
+        return Collections.singletonMap("set", value);
+    }
+}
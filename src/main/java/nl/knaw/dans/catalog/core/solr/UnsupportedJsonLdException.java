@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+// the metadata uses a JSON-LD feature that the streaming extractor does not support; the Jena reader is used instead
+class UnsupportedJsonLdException extends Exception {
+    UnsupportedJsonLdException(String message) {
+        super(message);
+    }
+
+    UnsupportedJsonLdException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.db;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.core.AfterCommitExecutor;
+import org.hibernate.SessionFactory;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+@Slf4j
+public class HibernateAfterCommitExecutor implements AfterCommitExecutor {
+    private final SessionFactory sessionFactory;
+
+    public HibernateAfterCommitExecutor(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public void execute(Runnable action) {
+        sessionFactory.getCurrentSession().getTransaction().registerSynchronization(new Synchronization() {
+
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != Status.STATUS_COMMITTED) {
+                    return;
+                }
+
+                // the transaction is already committed, so a failure must not reach the caller
+                try {
+                    action.run();
+                }
+                catch (RuntimeException e) {
+                    log.error("Action after commit failed", e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.catalog.core.IndexOutboxRepository;
+import org.hibernate.SessionFactory;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class IndexOutboxDAO extends AbstractDAO<IndexOutboxEntry> implements IndexOutboxRepository {
+    public IndexOutboxDAO(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    @Override
+    public void saveAll(Collection<IndexOutboxEntry> entries) {
+        for (var entry : entries) {
+            currentSession().persist(entry);
+        }
+    }
+
+    @Override
+    public List<IndexOutboxEntry> findDue(OffsetDateTime now, int limit) {
+        return new ArrayList<>(
+            query("from IndexOutboxEntry where nextAttempt <= :now order by id")
+                .setParameter("now", now)
+                .setMaxResults(limit)
+                .list()
+        );
+    }
+
+    @Override
+    public List<IndexOutboxEntry> findAllFor(Collection<String> bagIds, Collection<String> tarUuids) {
+        var entries = new ArrayList<IndexOutboxEntry>();
+
+        if (!bagIds.isEmpty()) {
+            entries.addAll(query("from IndexOutboxEntry where bagId in (:bagIds)")
+                .setParameterList("bagIds", bagIds)
+                .list());
+        }
+
+        if (!tarUuids.isEmpty()) {
+            entries.addAll(query("from IndexOutboxEntry where tarUuid in (:tarUuids)")
+                .setParameterList("tarUuids", tarUuids)
+                .list());
+        }
+
+        return entries;
+    }
+
+    @Override
+    public void deleteAll(Collection<IndexOutboxEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        var ids = entries.stream()
+            .map(IndexOutboxEntry::getId)
+            .collect(Collectors.toList());
+
+        for (var entry : entries) {
+            currentSession().evict(entry);
+        }
+
+        currentSession().createQuery("delete from IndexOutboxEntry where id in (:ids)")
+            .setParameterList("ids", ids)
+            .executeUpdate();
+    }
+
+    @Override
+    public long count() {
+        return currentSession().createQuery("select count(e) from IndexOutboxEntry e", Long.class)
+            .uniqueResult();
+    }
+
+    @Override
+    public Optional<OffsetDateTime> findOldestCreated() {
+        return currentSession().createQuery("select min(e.created) from IndexOutboxEntry e", OffsetDateTime.class)
+            .uniqueResultOptional();
+    }
+}
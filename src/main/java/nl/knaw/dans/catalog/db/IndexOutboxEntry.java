@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.db;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+import java.util.Objects;
+
+// a pending search index update, written in the same transaction as the change that requires it
+@Entity
+@Table(name = "index_outbox", indexes = {
+    @Index(name = "index_outbox_next_attempt_idx", columnList = "next_attempt"),
+    @Index(name = "index_outbox_bag_id_idx", columnList = "bag_id"),
+    @Index(name = "index_outbox_tar_uuid_idx", columnList = "tar_uuid")
+})
+@Getter
+@Setter
+@ToString
+@Builder
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+public class IndexOutboxEntry {
+
+    public enum Type {
+        OCFL_OBJECT_VERSION,
+        // only the TAR fields of an OCFL object version
+        TAR_MEMBERSHIP,
+        TAR
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "index_outbox_seq")
+    @SequenceGenerator(name = "index_outbox_seq", sequenceName = "index_outbox_seq", allocationSize = 50)
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entry_type", nullable = false)
+    private Type type;
+    @Column(name = "bag_id")
+    private String bagId;
+    @Column(name = "object_version")
+    private Integer objectVersion;
+    @Column(name = "tar_uuid")
+    private String tarUuid;
+    @Column(name = "created", nullable = false)
+    private OffsetDateTime created;
+    @Column(name = "next_attempt", nullable = false)
+    private OffsetDateTime nextAttempt;
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o))
+            return false;
+        IndexOutboxEntry that = (IndexOutboxEntry) o;
+        return id != null && Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
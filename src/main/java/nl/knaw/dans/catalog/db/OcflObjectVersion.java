@@ -34,15 +34,23 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 import java.time.OffsetDateTime;
 import java.util.Objects;
 
 @Entity
-@Table(name = "ocfl_object_versions", uniqueConstraints = { @UniqueConstraint(columnNames = { "bag_id", "object_version" }) })
+@Table(name = "ocfl_object_versions",
+       uniqueConstraints = { @UniqueConstraint(columnNames = { "bag_id", "object_version" }) },
+       indexes = {
+           @Index(name = "ocfl_object_versions_created_idx", columnList = "created"),
+           @Index(name = "ocfl_object_versions_updated_idx", columnList = "updated"),
+           @Index(name = "ocfl_object_versions_tar_uuid_idx", columnList = "tar_uuid")
+       })
 @Getter
 @Setter
 @ToString
@@ -55,7 +63,8 @@ import java.util.Objects;
 public class OcflObjectVersion {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ocfl_object_versions_seq")
+    @SequenceGenerator(name = "ocfl_object_versions_seq", sequenceName = "ocfl_object_versions_seq", allocationSize = 50)
     private Long id;
     @Column(name = "bag_id", nullable = false)
     private String bagId;
@@ -88,6 +97,14 @@ public class OcflObjectVersion {
     private String ocflObjectPath;
     @Column(name = "metadata")
     private String metadata;
+    // extracted from the metadata when the version is created, so that indexing does not need to read the metadata;
+    // null if they were not extracted
+    @Column(name = "search_fields")
+    private String searchFields;
+    @Column(name = "title")
+    private String title;
+    @Column(name = "description")
+    private String description;
     @Column(name = "filepid_to_local_path")
     private String filePidToLocalPath;
     @Column(name = "export_timestamp")
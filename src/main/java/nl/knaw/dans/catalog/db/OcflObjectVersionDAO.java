@@ -15,21 +15,100 @@
  */
 package nl.knaw.dans.catalog.db;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
 import io.dropwizard.hibernate.AbstractDAO;
 import nl.knaw.dans.catalog.core.OcflObjectVersionRepository;
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
+import nl.knaw.dans.catalog.core.exception.OcflObjectVersionAlreadyExistsException;
 import nl.knaw.dans.catalog.core.exception.OcflObjectVersionNotFoundException;
 import org.hibernate.SessionFactory;
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.dialect.PostgreSQL95Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.TypedValue;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.BooleanType;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.LongType;
+import org.hibernate.type.OffsetDateTimeType;
+import org.hibernate.type.TextType;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class OcflObjectVersionDAO extends AbstractDAO<OcflObjectVersion> implements OcflObjectVersionRepository {
+    private static final int JDBC_BATCH_SIZE = 50;
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+    // the order of the pages, which is that of the unique index on (bag_id, object_version) as long as the collation of the
+    // database does not ignore punctuation
+    private static final Comparator<OcflObjectVersionId> ID_ORDER = Comparator.comparing(OcflObjectVersionId::getBagId)
+        .thenComparingInt(OcflObjectVersionId::getObjectVersion);
+
+    // columns overwritten when a skeleton record is replaced; created and tar_uuid are only written on insert
+    private static final List<String> UPSERT_COLUMNS = List.of(
+        "data_supplier",
+        "dataverse_pid",
+        "dataverse_pid_version",
+        "nbn",
+        "other_id",
+        "other_id_version",
+        "sword_token",
+        "ocfl_object_path",
+        "metadata",
+        "search_fields",
+        "title",
+        "description",
+        "filepid_to_local_path",
+        "export_timestamp",
+        "skeleton_record"
+    );
+
+    private static final String POSTGRES_UPSERT = "INSERT INTO ocfl_object_versions (id, bag_id, object_version, created, tar_uuid, "
+        + String.join(", ", UPSERT_COLUMNS) + ") "
+        + "VALUES (:id, :bag_id, :object_version, :now, :tar_uuid, " + joinColumns(c -> ":" + c) + ") "
+        + "ON CONFLICT (bag_id, object_version) DO UPDATE SET "
+        + joinColumns(c -> c + " = EXCLUDED." + c) + ", updated = :now "
+        + "WHERE ocfl_object_versions.skeleton_record "
+        + "RETURNING id, created, updated";
+
+    // with JDBC parameters, as it is run as a plain JDBC statement to get the generated values
+    private static final String HSQLDB_MERGE = "MERGE INTO ocfl_object_versions t "
+        + "USING (VALUES (CAST(? AS LONGVARCHAR), CAST(? AS INTEGER))) AS s (bag_id, object_version) "
+        + "ON t.bag_id = s.bag_id AND t.object_version = s.object_version AND t.skeleton_record = TRUE "
+        + "WHEN MATCHED THEN UPDATE SET "
+        + joinColumns(c -> "t." + c + " = ?") + ", t.updated = ? "
+        + "WHEN NOT MATCHED THEN INSERT (id, bag_id, object_version, created, tar_uuid, " + String.join(", ", UPSERT_COLUMNS) + ") "
+        + "VALUES (?, s.bag_id, s.object_version, ?, ?, " + joinColumns(c -> "?") + ")";
+
+    // HSQLDB stores the unquoted column names in upper case
+    private static final String[] HSQLDB_GENERATED_COLUMNS = { "ID", "CREATED", "UPDATED" };
+
+    private final Histogram idsResolvedPerQuery;
+
     public OcflObjectVersionDAO(SessionFactory sessionFactory) {
+        this(sessionFactory, new MetricRegistry());
+    }
+
+    public OcflObjectVersionDAO(SessionFactory sessionFactory, MetricRegistry metricRegistry) {
         super(sessionFactory);
+        this.idsResolvedPerQuery = metricRegistry.histogram(MetricRegistry.name(OcflObjectVersionDAO.class, "ids-resolved-per-query"));
     }
 
     @Override
@@ -49,11 +128,6 @@ public class OcflObjectVersionDAO extends AbstractDAO<OcflObjectVersion> impleme
         );
     }
 
-    @Override
-    public List<OcflObjectVersion> findAll() {
-        return new ArrayList<>(list(query("from OcflObjectVersion")));
-    }
-
     @Override
     public List<OcflObjectVersion> findAllBySwordToken(String swordToken) {
         return new ArrayList<>(
@@ -64,7 +138,152 @@ public class OcflObjectVersionDAO extends AbstractDAO<OcflObjectVersion> impleme
     }
 
     @Override
-    public OcflObjectVersion save(OcflObjectVersion ocflObjectVersion) {
+    public OcflObjectVersion save(OcflObjectVersion ocflObjectVersion) throws OcflObjectVersionAlreadyExistsException {
+        var dialect = ((SessionFactoryImplementor) currentSession().getSessionFactory()).getJdbcServices().getDialect();
+
+        if (dialect instanceof PostgreSQL95Dialect) {
+            return upsertPostgres(ocflObjectVersion);
+        }
+        else if (dialect instanceof HSQLDialect) {
+            return upsertHsqldb(ocflObjectVersion);
+        }
+
+        return selectAndMerge(ocflObjectVersion);
+    }
+
+    private OcflObjectVersion upsertPostgres(OcflObjectVersion ocflObjectVersion) throws OcflObjectVersionAlreadyExistsException {
+        var now = OffsetDateTime.now();
+        NativeQuery<Object[]> query = currentSession().createNativeQuery(POSTGRES_UPSERT);
+        query
+            .addScalar("id", LongType.INSTANCE)
+            .addScalar("created", OffsetDateTimeType.INSTANCE)
+            .addScalar("updated", OffsetDateTimeType.INSTANCE);
+
+        // the conflict clause only updates skeleton records, so an existing full record yields no row
+        var result = bindUpsertParameters(query, ocflObjectVersion, now)
+            .uniqueResultOptional()
+            .orElseThrow(() -> new OcflObjectVersionAlreadyExistsException(ocflObjectVersion.getBagId(), ocflObjectVersion.getObjectVersion()));
+
+        return setGeneratedValues(ocflObjectVersion, result);
+    }
+
+    private OcflObjectVersion upsertHsqldb(OcflObjectVersion ocflObjectVersion) throws OcflObjectVersionAlreadyExistsException {
+        var now = OffsetDateTime.now();
+        var session = (SessionImplementor) currentSession();
+        var values = getUpsertValues(ocflObjectVersion, now);
+
+        // MERGE has no RETURNING clause, but HSQLDB returns the requested columns of the inserted or updated row as
+        // generated keys, so they need not be read back with another statement
+        var result = session.doReturningWork(connection -> {
+            try (var statement = connection.prepareStatement(HSQLDB_MERGE, HSQLDB_GENERATED_COLUMNS)) {
+                var index = 0;
+
+                for (var name : List.of("bag_id", "object_version")) {
+                    bind(statement, ++index, values.get(name), session);
+                }
+
+                for (var column : UPSERT_COLUMNS) {
+                    bind(statement, ++index, values.get(column), session);
+                }
+
+                bind(statement, ++index, values.get("now"), session);
+                bind(statement, ++index, values.get("id"), session);
+                bind(statement, ++index, values.get("now"), session);
+                bind(statement, ++index, values.get("tar_uuid"), session);
+
+                for (var column : UPSERT_COLUMNS) {
+                    bind(statement, ++index, values.get(column), session);
+                }
+
+                try {
+                    statement.executeUpdate();
+                }
+                catch (SQLException e) {
+                    // only skeleton records match, so an existing full record ends up in the insert branch and violates the
+                    // unique constraint
+                    if (e.getSQLState() != null && e.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION)) {
+                        return null;
+                    }
+
+                    throw e;
+                }
+
+                try (var keys = statement.getGeneratedKeys()) {
+                    keys.next();
+                    return new Object[] {
+                        keys.getLong("ID"),
+                        OffsetDateTimeType.INSTANCE.nullSafeGet(keys, "CREATED", session),
+                        OffsetDateTimeType.INSTANCE.nullSafeGet(keys, "UPDATED", session)
+                    };
+                }
+            }
+        });
+
+        if (result == null) {
+            throw new OcflObjectVersionAlreadyExistsException(ocflObjectVersion.getBagId(), ocflObjectVersion.getObjectVersion());
+        }
+
+        return setGeneratedValues(ocflObjectVersion, result);
+    }
+
+    private static void bind(PreparedStatement statement, int index, TypedValue value, SessionImplementor session) throws SQLException {
+        value.getType().nullSafeSet(statement, value.getValue(), index, session);
+    }
+
+    private OcflObjectVersion setGeneratedValues(OcflObjectVersion ocflObjectVersion, Object[] row) {
+        var id = (Long) row[0];
+        var session = currentSession();
+
+        // the row was written with SQL, so a skeleton record loaded earlier in this session is out of date
+        session.evict(session.byId(OcflObjectVersion.class).getReference(id));
+
+        ocflObjectVersion.setInternalId(id);
+        ocflObjectVersion.setCreated((OffsetDateTime) row[1]);
+        ocflObjectVersion.setUpdated((OffsetDateTime) row[2]);
+        return ocflObjectVersion;
+    }
+
+    private <T> NativeQuery<T> bindUpsertParameters(NativeQuery<T> query, OcflObjectVersion ocflObjectVersion, OffsetDateTime now) {
+        getUpsertValues(ocflObjectVersion, now).forEach((name, value) -> query.setParameter(name, value.getValue(), value.getType()));
+        return query;
+    }
+
+    // the values of the upsert statements by parameter name, with their types, as they may be null
+    private Map<String, TypedValue> getUpsertValues(OcflObjectVersion ocflObjectVersion, OffsetDateTime now) {
+        var tar = ocflObjectVersion.getTar();
+        var values = new HashMap<String, TypedValue>();
+
+        values.put("id", new TypedValue(LongType.INSTANCE, nextId()));
+        values.put("now", new TypedValue(OffsetDateTimeType.INSTANCE, now));
+        values.put("bag_id", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getBagId()));
+        values.put("object_version", new TypedValue(IntegerType.INSTANCE, ocflObjectVersion.getObjectVersion()));
+        values.put("tar_uuid", new TypedValue(TextType.INSTANCE, tar != null ? tar.getTarUuid() : null));
+        values.put("data_supplier", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getDataSupplier()));
+        values.put("dataverse_pid", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getDataversePid()));
+        values.put("dataverse_pid_version", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getDataversePidVersion()));
+        values.put("nbn", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getNbn()));
+        values.put("other_id", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getOtherId()));
+        values.put("other_id_version", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getOtherIdVersion()));
+        values.put("sword_token", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getSwordToken()));
+        values.put("ocfl_object_path", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getOcflObjectPath()));
+        values.put("metadata", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getMetadata()));
+        values.put("search_fields", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getSearchFields()));
+        values.put("title", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getTitle()));
+        values.put("description", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getDescription()));
+        values.put("filepid_to_local_path", new TypedValue(TextType.INSTANCE, ocflObjectVersion.getFilePidToLocalPath()));
+        values.put("export_timestamp", new TypedValue(OffsetDateTimeType.INSTANCE, ocflObjectVersion.getExportTimestamp()));
+        values.put("skeleton_record", new TypedValue(BooleanType.INSTANCE, ocflObjectVersion.isSkeletonRecord()));
+        return values;
+    }
+
+    // an id from the pooled optimizer of the entity, as Hibernate assigns them, so that a row written with SQL does not
+    // take a whole block of the sequence; it is not used if the upsert updates a skeleton record instead
+    private Long nextId() {
+        var session = (SessionImplementor) currentSession();
+        return (Long) session.getFactory().getMetamodel().entityPersister(OcflObjectVersion.class).getIdentifierGenerator().generate(session, null);
+    }
+
+    private OcflObjectVersion selectAndMerge(OcflObjectVersion ocflObjectVersion) {
         findByBagIdAndVersion(ocflObjectVersion.getBagId(), ocflObjectVersion.getObjectVersion())
             .ifPresent(item -> {
                 ocflObjectVersion.setInternalId(item.getInternalId());
@@ -79,19 +298,100 @@ public class OcflObjectVersionDAO extends AbstractDAO<OcflObjectVersion> impleme
         return persist(merged);
     }
 
+    @Override
+    public List<OcflObjectVersion> saveAll(Collection<OcflObjectVersion> ocflObjectVersions) {
+        var ids = ocflObjectVersions.stream()
+            .map(OcflObjectVersion::getId)
+            .collect(Collectors.toList());
+
+        var existing = findAllByIds(ids).stream()
+            .collect(Collectors.toMap(OcflObjectVersion::getId, Function.identity()));
+
+        return saveAll(ocflObjectVersions, existing);
+    }
+
+    @Override
+    public List<OcflObjectVersion> saveAll(Collection<OcflObjectVersion> ocflObjectVersions, Map<OcflObjectVersionId, OcflObjectVersion> existing) {
+        var session = currentSession();
+        session.setJdbcBatchSize(JDBC_BATCH_SIZE);
+
+        var now = OffsetDateTime.now();
+        var results = new ArrayList<OcflObjectVersion>(ocflObjectVersions.size());
+
+        for (var ocflObjectVersion : ocflObjectVersions) {
+            var item = existing.get(ocflObjectVersion.getId());
+
+            if (item != null) {
+                ocflObjectVersion.setInternalId(item.getInternalId());
+                ocflObjectVersion.setCreated(item.getCreated());
+                ocflObjectVersion.setUpdated(now);
+                results.add((OcflObjectVersion) session.merge(ocflObjectVersion));
+            }
+            else {
+                ocflObjectVersion.setCreated(now);
+                session.persist(ocflObjectVersion);
+                results.add(ocflObjectVersion);
+            }
+        }
+
+        session.flush();
+        return results;
+    }
+
     @Override
     public List<OcflObjectVersion> findAll(Collection<OcflObjectVersionId> versions) throws OcflObjectVersionNotFoundException {
+        if (versions == null) {
+            return new ArrayList<>();
+        }
+
+        var found = findAllByIds(versions).stream()
+            .collect(Collectors.toMap(OcflObjectVersion::getId, Function.identity()));
+
+        var missing = versions.stream()
+            .filter(version -> !found.containsKey(version))
+            .distinct()
+            .map(version -> String.format("OcflObjectVersion with bagId %s and version %d not found", version.getBagId(), version.getObjectVersion()))
+            .collect(Collectors.toList());
+
+        if (!missing.isEmpty()) {
+            throw new OcflObjectVersionNotFoundException(String.join("; ", missing));
+        }
+
+        // keep the order (and duplicates) of the request
+        return versions.stream()
+            .map(found::get)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<OcflObjectVersion> findAllByIds(Collection<OcflObjectVersionId> versions) {
+        var requested = new HashSet<>(versions);
+        var bagIds = requested.stream()
+            .map(OcflObjectVersionId::getBagId)
+            .distinct()
+            .collect(Collectors.toList());
+
         var ocflObjectVersions = new ArrayList<OcflObjectVersion>();
 
-        if (versions != null) {
-            for (var version : versions) {
-                var ocflObjectVersion = findByBagIdAndVersion(version.getBagId(), version.getObjectVersion())
-                    .orElseThrow(() -> new OcflObjectVersionNotFoundException(
-                        String.format("OcflObjectVersion with bagId %s and version %d not found", version.getBagId(), version.getObjectVersion())
-                    ));
+        for (var start = 0; start < bagIds.size(); start += LOOKUP_CHUNK_SIZE) {
+            var chunk = new HashSet<>(bagIds.subList(start, Math.min(start + LOOKUP_CHUNK_SIZE, bagIds.size())));
+            var objectVersions = requested.stream()
+                .filter(version -> chunk.contains(version.getBagId()))
+                .map(OcflObjectVersionId::getObjectVersion)
+                .collect(Collectors.toSet());
 
-                ocflObjectVersions.add(ocflObjectVersion);
-            }
+            // the IN clauses select a superset of the requested (bagId, version) pairs, the exact match is done in memory
+            var candidates = query("select v from OcflObjectVersion v left join fetch v.tar where v.bagId in (:bagIds) and v.objectVersion in (:versions)")
+                .setParameterList("bagIds", chunk)
+                .setParameterList("versions", objectVersions)
+                .list();
+
+            var matches = candidates.stream()
+                .filter(candidate -> requested.contains(candidate.getId()))
+                .collect(Collectors.toList());
+
+            idsResolvedPerQuery.update(matches.size());
+            ocflObjectVersions.addAll(matches);
         }
 
         return ocflObjectVersions;
@@ -107,4 +407,112 @@ public class OcflObjectVersionDAO extends AbstractDAO<OcflObjectVersion> impleme
             )
         );
     }
+
+    private static String joinColumns(Function<String, String> mapper) {
+        return UPSERT_COLUMNS.stream().map(mapper).collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public List<OcflObjectVersion> findPage(ReindexScope scope, OcflObjectVersionId after, int limit) {
+        // only the bounds that are given are part of the query, so that no null parameters need to be typed
+        var conditions = new ArrayList<String>();
+        var parameters = new HashMap<String, Object>();
+
+        if (scope.getFrom() != null) {
+            conditions.add("v.bagId >= :from");
+            parameters.put("from", scope.getFrom());
+        }
+
+        if (scope.getTo() != null) {
+            conditions.add("v.bagId < :to");
+            parameters.put("to", scope.getTo());
+        }
+
+        if (after != null) {
+            // the first condition lets the unique index on (bag_id, object_version) find the start of the page
+            conditions.add("v.bagId >= :afterBagId and (v.bagId > :afterBagId or v.objectVersion > :afterObjectVersion)");
+            parameters.put("afterBagId", after.getBagId());
+            parameters.put("afterObjectVersion", after.getObjectVersion());
+        }
+
+        List<OcflObjectVersion> ocflObjectVersions;
+
+        if (scope.getSince() == null) {
+            ocflObjectVersions = findPage("left join fetch v.tar t", conditions, parameters, limit);
+        }
+        else {
+            // a version changed if it was created or updated, or if its TAR was updated; one query per way, so that each
+            // can use its own index instead of the disjunction that can use none, and the first pages of the three are
+            // merged, which is a union that the query language does not have
+            parameters.put("since", scope.getSince());
+            var merged = new TreeMap<OcflObjectVersionId, OcflObjectVersion>(ID_ORDER);
+
+            var branches = List.of(
+                findPage("left join fetch v.tar t", and(conditions, "v.created >= :since"), parameters, limit),
+                findPage("left join fetch v.tar t", and(conditions, "v.updated >= :since"), parameters, limit),
+                findPage("join fetch v.tar t", and(conditions, "t.updated >= :since"), parameters, limit));
+
+            for (var branch : branches) {
+                for (var ocflObjectVersion : branch) {
+                    merged.putIfAbsent(ocflObjectVersion.getId(), ocflObjectVersion);
+                }
+            }
+
+            ocflObjectVersions = merged.values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+        }
+
+        var tarUuids = ocflObjectVersions.stream()
+            .map(OcflObjectVersion::getTar)
+            .filter(Objects::nonNull)
+            .map(Tar::getTarUuid)
+            .distinct()
+            .collect(Collectors.toList());
+
+        // the parts of all TARs of the page in one query; they are loaded into the TARs already in the session
+        if (!tarUuids.isEmpty()) {
+            currentSession().createQuery("select distinct t from Tar t left join fetch t.tarParts where t.tarUuid in (:ids)", Tar.class)
+                .setParameterList("ids", tarUuids)
+                .list();
+        }
+
+        return ocflObjectVersions;
+    }
+
+    private static List<String> and(List<String> conditions, String condition) {
+        var result = new ArrayList<>(conditions);
+        result.add(condition);
+        return result;
+    }
+
+    private List<OcflObjectVersion> findPage(String join, List<String> conditions, Map<String, Object> parameters, int limit) {
+        var query = currentSession().createQuery("select v from OcflObjectVersion v " + join
+            + (conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions))
+            + " order by v.bagId, v.objectVersion", OcflObjectVersion.class);
+
+        parameters.forEach(query::setParameter);
+        return query.setMaxResults(limit).list();
+    }
+
+    @Override
+    public long count() {
+        return currentSession().createQuery("select count(v) from OcflObjectVersion v", Long.class)
+            .uniqueResult();
+    }
+
+    @Override
+    public List<OcflObjectVersion> findWithoutSearchFields(OcflObjectVersionId after, int limit) {
+        var query = currentSession().createQuery("select v from OcflObjectVersion v"
+            + " where v.searchFields is null and v.metadata is not null"
+            + (after == null ? "" : " and v.bagId >= :afterBagId and (v.bagId > :afterBagId or v.objectVersion > :afterObjectVersion)")
+            + " order by v.bagId, v.objectVersion", OcflObjectVersion.class);
+
+        if (after != null) {
+            query.setParameter("afterBagId", after.getBagId());
+            query.setParameter("afterObjectVersion", after.getObjectVersion());
+        }
+
+        return query.setMaxResults(limit).list();
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.db;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.Hibernate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.OffsetDateTime;
+import java.util.Objects;
+
+// how far a reindex got; the scope is part of the name, so that reindexes of disjoint ranges each have their own
+// checkpoint
+@Entity
+@Table(name = "reindex_checkpoints")
+@Getter
+@Setter
+@ToString
+@Builder
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+public class ReindexCheckpoint {
+    @Id
+    @Column(name = "name")
+    private String name;
+    // the last OCFL object version of which the document was accepted by the search index
+    @Column(name = "last_bag_id")
+    private String lastBagId;
+    @Column(name = "last_object_version")
+    private Integer lastObjectVersion;
+    @Column(name = "ocfl_object_versions", nullable = false)
+    private long ocflObjectVersions;
+    @Column(name = "failed", nullable = false)
+    private long failed;
+    @Column(name = "completed", nullable = false)
+    private boolean completed;
+    @Column(name = "updated", nullable = false)
+    private OffsetDateTime updated;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o))
+            return false;
+        ReindexCheckpoint that = (ReindexCheckpoint) o;
+        return name != null && Objects.equals(name, that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.db;
+
+import io.dropwizard.hibernate.AbstractDAO;
+import nl.knaw.dans.catalog.core.ReindexCheckpointRepository;
+import org.hibernate.SessionFactory;
+
+import java.util.Optional;
+
+public class ReindexCheckpointDAO extends AbstractDAO<ReindexCheckpoint> implements ReindexCheckpointRepository {
+    public ReindexCheckpointDAO(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    @Override
+    public Optional<ReindexCheckpoint> findByName(String name) {
+        return Optional.ofNullable(get(name));
+    }
+
+    @Override
+    public void save(ReindexCheckpoint checkpoint) {
+        currentSession().merge(checkpoint);
+    }
+}
@@ -28,6 +28,7 @@ import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import java.time.OffsetDateTime;
@@ -39,7 +40,7 @@ import java.util.Objects;
 @Getter
 @Setter
 @Entity
-@Table(name = "tars")
+@Table(name = "tars", indexes = { @Index(name = "tars_updated_idx", columnList = "updated") })
 @Builder
 @AllArgsConstructor(access = AccessLevel.PACKAGE)
 @NoArgsConstructor(access = AccessLevel.PACKAGE)
@@ -51,6 +52,9 @@ public class Tar {
     private String vaultPath;
     @Column(name = "archival_date")
     private OffsetDateTime archivalDate;
+    @Column(name = "updated")
+    @Setter(AccessLevel.PACKAGE)
+    private OffsetDateTime updated;
     @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "tar")
     @ToString.Exclude
     private List<TarPart> tarParts = new ArrayList<>();
@@ -76,6 +80,11 @@ public class Tar {
     }
 
     public List<OcflObjectVersion> getOcflObjectVersions() {
+        // null when built without versions, like in setOcflObjectVersions
+        if (ocflObjectVersions == null) {
+            return new ArrayList<>();
+        }
+
         return new ArrayList<>(ocflObjectVersions);
     }
 
@@ -17,14 +17,22 @@ package nl.knaw.dans.catalog.db;
 
 import io.dropwizard.hibernate.AbstractDAO;
 import nl.knaw.dans.catalog.core.TarRepository;
+import org.hibernate.FlushMode;
 import org.hibernate.Hibernate;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionImplementor;
 
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class TarDAO extends AbstractDAO<Tar> implements TarRepository {
+    private static final int UPDATE_CHUNK_SIZE = 500;
+
     public TarDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
     }
@@ -39,17 +47,29 @@ public class TarDAO extends AbstractDAO<Tar> implements TarRepository {
 
     @Override
     public Tar save(Tar tar) {
-        for (var version : tar.getOcflObjectVersions()) {
-            version.setTar(tar);
-            currentSession().save(version);
+        var versions = tar.getOcflObjectVersions();
+
+        // membership is written with bulk updates, so new versions are stored without a TAR first
+        for (var version : versions) {
+            if (version.getInternalId() == null) {
+                version.setTar(null);
+                currentSession().persist(version);
+            }
         }
 
         for (var part : tar.getTarParts()) {
             part.setTar(tar);
         }
 
-        var merged = (Tar) currentSession().merge(tar);
-        return persist(merged);
+        tar.setUpdated(OffsetDateTime.now());
+
+        var merged = persist((Tar) currentSession().merge(tar));
+        var memberIds = versions.stream()
+            .map(OcflObjectVersion::getInternalId)
+            .collect(Collectors.toSet());
+
+        replaceMembership(merged, memberIds);
+        return merged;
     }
 
     @Override
@@ -59,21 +79,93 @@ public class TarDAO extends AbstractDAO<Tar> implements TarRepository {
             .collect(Collectors.toList());
     }
 
+    @Override
+    public List<Tar> findPage(String after, int limit) {
+        var query = currentSession().createQuery("from Tar t"
+            + (after == null ? "" : " where t.tarUuid > :after")
+            + " order by t.tarUuid", Tar.class);
+
+        if (after != null) {
+            query.setParameter("after", after);
+        }
+
+        var tars = query.setMaxResults(limit).list();
+
+        // the parts of all TARs of the page in one query; they are loaded into the TARs already in the session
+        if (!tars.isEmpty()) {
+            currentSession().createQuery("select distinct t from Tar t left join fetch t.tarParts where t.tarUuid in (:ids)", Tar.class)
+                .setParameterList("ids", tars.stream().map(Tar::getTarUuid).collect(Collectors.toList()))
+                .list();
+        }
+
+        return tars;
+    }
+
     void evict(Tar tar) {
         currentSession().evict(tar);
         currentSession().flush();
     }
 
     void delete(Tar tar) {
-        for (var version: tar.getOcflObjectVersions()) {
-            version.setTar(null);
-            currentSession().save(version);
-        }
+        replaceMembership(tar, Set.of());
 
         currentSession().delete(tar);
         currentSession().flush();
     }
 
+    private void replaceMembership(Tar tar, Set<Long> memberIds) {
+        var session = currentSession();
+
+        // read without flushing, as flushing now would write the changed versions one by one
+        var storedMemberIds = new HashSet<>(session.createQuery("select v.id from OcflObjectVersion v where v.tar = :tar", Long.class)
+            .setParameter("tar", tar)
+            .setHibernateFlushMode(FlushMode.MANUAL)
+            .list());
+
+        // managed versions that are or were in this TAR are put back to their stored TAR, so that the flush does not
+        // write their membership; after the flush they are detached, so that the bulk updates cannot leave them stale
+        var affected = new ArrayList<OcflObjectVersion>();
+
+        for (var entry : ((SessionImplementor) session).getPersistenceContext().reentrantSafeEntityEntries()) {
+            if (entry.getKey() instanceof OcflObjectVersion) {
+                var version = (OcflObjectVersion) entry.getKey();
+
+                if (memberIds.contains(version.getInternalId()) || storedMemberIds.contains(version.getInternalId())) {
+                    version.setTar(storedMemberIds.contains(version.getInternalId()) ? tar : null);
+                    affected.add(version);
+                }
+            }
+        }
+
+        session.flush();
+        affected.forEach(session::evict);
+
+        // a change of membership changes the documents of the versions, so they are marked as updated for an
+        // incremental reindex
+        var now = OffsetDateTime.now();
+
+        session.createQuery("update OcflObjectVersion set tar = null, updated = :now where tar = :tar")
+            .setParameter("tar", tar)
+            .setParameter("now", now)
+            .executeUpdate();
+
+        var ids = new ArrayList<>(memberIds);
+
+        for (var i = 0; i < ids.size(); i += UPDATE_CHUNK_SIZE) {
+            session.createQuery("update OcflObjectVersion set tar = :tar, updated = :now where id in (:ids)")
+                .setParameter("tar", tar)
+                .setParameter("now", now)
+                .setParameterList("ids", ids.subList(i, Math.min(i + UPDATE_CHUNK_SIZE, ids.size())))
+                .executeUpdate();
+        }
+
+        // the detached versions are still referred to by the TAR that is returned, so they get the stored values
+        for (var version : affected) {
+            version.setTar(memberIds.contains(version.getInternalId()) ? tar : null);
+            version.setUpdated(now);
+        }
+    }
+
     List<TarPart> findAllParts() {
         return currentSession().createQuery("from TarPart", TarPart.class).list();
     }
@@ -33,7 +33,8 @@ import java.util.Objects;
 public class TarPart {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tar_parts_seq")
+    @SequenceGenerator(name = "tar_parts_seq", sequenceName = "tar_parts_seq", allocationSize = 50)
     private Long id;
     @Column(name = "part_name")
     private String partName;
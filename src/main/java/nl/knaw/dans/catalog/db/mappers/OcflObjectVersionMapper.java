@@ -18,8 +18,10 @@ package nl.knaw.dans.catalog.db.mappers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionParameters;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionSnapshot;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.factory.Mappers;
 
 import java.util.Map;
@@ -32,6 +34,10 @@ public interface OcflObjectVersionMapper {
 
     OcflObjectVersion convert(OcflObjectVersionParameters parameters);
 
+    @Mapping(source = "tar.tarUuid", target = "tarUuid")
+    @Mapping(source = "tar.archivalDate", target = "tarArchivalDate")
+    OcflObjectVersionSnapshot convert(OcflObjectVersion ocflObjectVersion);
+
     default String mapMetadata(Map<String, Object> value) throws JsonProcessingException {
         if (value == null) {
             return null;
@@ -17,12 +17,15 @@ package nl.knaw.dans.catalog.db.mappers;
 
 import nl.knaw.dans.catalog.core.domain.TarParameters;
 import nl.knaw.dans.catalog.core.domain.TarPartParameters;
+import nl.knaw.dans.catalog.core.domain.TarPartSnapshot;
+import nl.knaw.dans.catalog.core.domain.TarSnapshot;
 import nl.knaw.dans.catalog.db.Tar;
 import nl.knaw.dans.catalog.db.TarPart;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.factory.Mappers;
 
-@Mapper
+@Mapper(uses = { OcflObjectVersionMapper.class })
 public interface TarMapper {
 
     TarMapper INSTANCE = Mappers.getMapper(TarMapper.class);
@@ -31,5 +34,8 @@ public interface TarMapper {
 
     TarPart convert(TarPartParameters parameters);
 
+    TarSnapshot convert(Tar tar);
 
+    @Mapping(source = "tar.tarUuid", target = "tarUuid")
+    TarPartSnapshot convert(TarPart tarPart);
 }
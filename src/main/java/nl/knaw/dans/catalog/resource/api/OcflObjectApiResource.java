@@ -16,8 +16,11 @@
 package nl.knaw.dans.catalog.resource.api;
 
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.api.OcflObjectVersionBulkItemDto;
+import nl.knaw.dans.catalog.api.OcflObjectVersionBulkResultDto;
 import nl.knaw.dans.catalog.api.OcflObjectVersionParametersDto;
 import nl.knaw.dans.catalog.core.UseCases;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionBulkResult;
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
 import nl.knaw.dans.catalog.core.exception.OcflObjectVersionAlreadyExistsException;
 import nl.knaw.dans.catalog.resource.OcflObjectApi;
@@ -25,6 +28,8 @@ import nl.knaw.dans.catalog.resource.mappers.OcflObjectVersionMapper;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -32,13 +37,15 @@ public class OcflObjectApiResource implements OcflObjectApi {
     private final OcflObjectVersionMapper ocflObjectVersionMapper = OcflObjectVersionMapper.INSTANCE;
 
     private final UseCases useCases;
+    private final int bulkChunkSize;
 
-    public OcflObjectApiResource(UseCases useCases) {
+    public OcflObjectApiResource(UseCases useCases, int bulkChunkSize) {
         this.useCases = useCases;
+        this.bulkChunkSize = bulkChunkSize;
     }
 
     @Override
-    public Response createOcflObjectVersion(String bagId, Integer versionNumber, OcflObjectVersionParametersDto createOcflObjectVersionRequestDto) {
+    public Response createOcflObjectVersion(String bagId, Integer versionNumber, OcflObjectVersionParametersDto createOcflObjectVersionRequestDto, Boolean waitUntilVisible) {
         try {
             var parameters = ocflObjectVersionMapper.convert(createOcflObjectVersionRequestDto);
             var result = useCases.createOcflObjectVersion(
@@ -47,7 +54,7 @@ public class OcflObjectApiResource implements OcflObjectApi {
             );
 
             var response = ocflObjectVersionMapper.convert(result);
-            return Response.ok(response).status(201).build();
+            return Response.ok(response).status(isVisible(waitUntilVisible) ? 201 : 202).build();
         }
         catch (OcflObjectVersionAlreadyExistsException e) {
             log.error(e.getMessage());
@@ -59,6 +66,43 @@ public class OcflObjectApiResource implements OcflObjectApi {
         }
     }
 
+    @Override
+    public Response createOcflObjectVersions(List<OcflObjectVersionBulkItemDto> items, Boolean waitUntilVisible) {
+        log.info("Received {} OCFL object versions to store in bulk", items.size());
+        var results = new ArrayList<OcflObjectVersionBulkResultDto>(items.size());
+
+        // every chunk is stored in its own transaction, so a failing chunk does not affect the others
+        for (var start = 0; start < items.size(); start += bulkChunkSize) {
+            var chunk = items.subList(start, Math.min(start + bulkChunkSize, items.size())).stream()
+                .map(ocflObjectVersionMapper::convert)
+                .collect(Collectors.toList());
+
+            try {
+                useCases.createOcflObjectVersions(chunk).stream()
+                    .map(ocflObjectVersionMapper::convert)
+                    .forEach(results::add);
+            }
+            catch (Throwable e) {
+                log.error("Unable to store chunk of {} OCFL object versions: {}", chunk.size(), e.getMessage(), e);
+
+                for (var item : chunk) {
+                    results.add(ocflObjectVersionMapper.convert(OcflObjectVersionBulkResult.builder()
+                        .id(item.getId())
+                        .status(OcflObjectVersionBulkResult.Status.FAILED)
+                        .message(e.getMessage())
+                        .build()));
+                }
+            }
+        }
+
+        return Response.ok(results).status(isVisible(waitUntilVisible) ? 200 : 202).build();
+    }
+
+    // only waits when the client asked for it
+    private boolean isVisible(Boolean waitUntilVisible) {
+        return !Boolean.TRUE.equals(waitUntilVisible) || useCases.waitUntilVisible();
+    }
+
     @Override
     public Response getOcflObjectByBagIdAndVersionNumber(String bagId, Integer versionNumber) {
         var result = useCases.findOcflObjectVersionByBagIdAndVersion(bagId, versionNumber)
@@ -41,13 +41,13 @@ public class TarAPIResource implements TarApi {
     }
 
     @Override
-    public Response addArchive(TarParameterDto tarDto) {
+    public Response addArchive(TarParameterDto tarDto, Boolean waitUntilVisible) {
         log.info("Received new TAR {}, storing in database", tarDto);
 
         try {
             var result = useCases.createTar(tarDto.getTarUuid().toString(), tarMapper.convert(tarDto));
             var converted = tarMapper.convert(result);
-            return Response.ok(converted).status(201).build();
+            return Response.ok(converted).status(isVisible(waitUntilVisible) ? 201 : 202).build();
         }
         catch (OcflObjectVersionAlreadyInTarException | TarAlreadyExistsException e) {
             log.error(e.getMessage());
@@ -74,14 +74,14 @@ public class TarAPIResource implements TarApi {
     }
 
     @Override
-    public Response updateArchive(UUID id, TarParameterDto tarDto) {
+    public Response updateArchive(UUID id, TarParameterDto tarDto, Boolean waitUntilVisible) {
         log.info("Received existing TAR {}, ID is {}, storing in database", tarDto, id);
 
         try {
             var result = useCases.updateTar(id.toString(), tarMapper.convert(tarDto));
             var response = tarMapper.convert(result);
 
-            return Response.ok(response).build();
+            return Response.ok(response).status(isVisible(waitUntilVisible) ? 200 : 202).build();
         }
         catch (OcflObjectVersionAlreadyInTarException e) {
             log.error(e.getMessage());
@@ -93,4 +93,8 @@ public class TarAPIResource implements TarApi {
         }
     }
 
+    // only waits when the client asked for it
+    private boolean isVisible(Boolean waitUntilVisible) {
+        return !Boolean.TRUE.equals(waitUntilVisible) || useCases.waitUntilVisible();
+    }
 }
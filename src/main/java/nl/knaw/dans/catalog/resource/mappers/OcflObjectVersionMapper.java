@@ -18,9 +18,15 @@ package nl.knaw.dans.catalog.resource.mappers;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.catalog.api.OcflObjectVersionBulkItemDto;
+import nl.knaw.dans.catalog.api.OcflObjectVersionBulkResultDto;
 import nl.knaw.dans.catalog.api.OcflObjectVersionDto;
 import nl.knaw.dans.catalog.api.OcflObjectVersionParametersDto;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionBulkItem;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionBulkResult;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionParameters;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionSnapshot;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
@@ -42,6 +48,19 @@ public interface OcflObjectVersionMapper {
     @Mapping(source = "tar.tarUuid", target = "tarUuid")
     OcflObjectVersionDto convert(OcflObjectVersion version) ;
 
+    OcflObjectVersionDto convert(OcflObjectVersionSnapshot version);
+
+    @Mapping(source = "id.bagId", target = "bagId")
+    @Mapping(source = "id.objectVersion", target = "objectVersion")
+    OcflObjectVersionBulkResultDto convert(OcflObjectVersionBulkResult result);
+
+    default OcflObjectVersionBulkItem convert(OcflObjectVersionBulkItemDto itemDto) {
+        return OcflObjectVersionBulkItem.builder()
+            .id(new OcflObjectVersionId(itemDto.getBagId(), itemDto.getObjectVersion()))
+            .parameters(convert(itemDto.getParameters()))
+            .build();
+    }
+
     default UUID mapUuid(String value) {
         if (value == null) {
             return null;
@@ -19,6 +19,8 @@ import nl.knaw.dans.catalog.api.TarDto;
 import nl.knaw.dans.catalog.api.TarParameterDto;
 import nl.knaw.dans.catalog.api.TarPartDto;
 import nl.knaw.dans.catalog.core.domain.TarParameters;
+import nl.knaw.dans.catalog.core.domain.TarPartSnapshot;
+import nl.knaw.dans.catalog.core.domain.TarSnapshot;
 import nl.knaw.dans.catalog.db.Tar;
 import nl.knaw.dans.catalog.db.TarPart;
 import org.mapstruct.Mapper;
@@ -40,4 +42,8 @@ public interface TarMapper {
     @Mapping(source = "tar.tarUuid", target = "tarUuid")
     TarPartDto convert(TarPart tarPart);
 
+    TarDto convert(TarSnapshot tar);
+
+    TarPartDto convert(TarPartSnapshot tarPart);
+
 }
\ No newline at end of file
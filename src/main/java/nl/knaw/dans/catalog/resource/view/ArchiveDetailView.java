@@ -17,23 +17,23 @@
 package nl.knaw.dans.catalog.resource.view;
 
 import io.dropwizard.views.View;
-import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionSnapshot;
 
 import java.util.List;
 
 public class ArchiveDetailView extends View {
-    private final List<OcflObjectVersion> ocflObjectVersions;
+    private final List<OcflObjectVersionSnapshot> ocflObjectVersions;
 
-    public ArchiveDetailView(List<OcflObjectVersion> ocflObjectVersions) {
+    public ArchiveDetailView(List<OcflObjectVersionSnapshot> ocflObjectVersions) {
         super("ocfl-object-version.ftl");
         this.ocflObjectVersions = ocflObjectVersions;
     }
 
-    public OcflObjectVersion getOcflObjectVersion() {
+    public OcflObjectVersionSnapshot getOcflObjectVersion() {
         return ocflObjectVersions.get(0);
     }
 
-    public List<OcflObjectVersion> getOtherOcflObjectVersions() {
+    public List<OcflObjectVersionSnapshot> getOtherOcflObjectVersions() {
         return ocflObjectVersions;
     }
 
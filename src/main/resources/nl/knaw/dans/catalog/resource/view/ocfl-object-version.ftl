@@ -51,9 +51,9 @@
                         <th scope="row">${other.objectVersion}</th>
                         <td scope="row">${other.exportTimestamp!'-'}</td>
 
-                        <#if other.tar??>
-                            <td>${other.tar.archivalDate!'-'}</td>
-                            <td>${other.tar.tarUuid!'-'}</td>
+                        <#if other.tarUuid??>
+                            <td>${other.tarArchivalDate!'-'}</td>
+                            <td>${other.tarUuid}</td>
                         <#else>
                             <td>-</td>
                             <td>-</td>
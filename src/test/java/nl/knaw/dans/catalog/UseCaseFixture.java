@@ -15,10 +15,12 @@
  */
 package nl.knaw.dans.catalog;
 
+import nl.knaw.dans.catalog.core.CatalogReadCache;
 import nl.knaw.dans.catalog.core.OcflObjectVersionRepository;
 import nl.knaw.dans.catalog.core.SearchIndex;
 import nl.knaw.dans.catalog.core.TarRepository;
 import nl.knaw.dans.catalog.core.UseCases;
+import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader;
 import org.mockito.Mockito;
 
 public class UseCaseFixture {
@@ -28,7 +30,9 @@ public class UseCaseFixture {
     public static final UseCases useCases = new UseCases(
         ocflObjectVersionRepository,
         tarRepository,
-        searchIndex
+        searchIndex,
+        new OcflObjectMetadataReader(),
+        new CatalogReadCache()
     );
 
     public static void reset() {
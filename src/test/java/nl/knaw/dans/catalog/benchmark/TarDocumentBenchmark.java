@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.benchmark;
+
+import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader;
+import nl.knaw.dans.catalog.core.solr.SolrDocumentMapper;
+import nl.knaw.dans.catalog.core.solr.SolrIndexLayout;
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.Tar;
+import nl.knaw.dans.catalog.db.TarPart;
+import org.apache.solr.common.SolrInputDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// maps all OCFL object versions of a TAR to documents, with the TAR fields built for every version (as indexing single
+// versions does) and once for the TAR; run with the GC profiler, gc.alloc.rate.norm shows the bytes allocated per TAR
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TarDocumentBenchmark {
+
+    @Param({ "5000" })
+    private int numberOfVersions;
+
+    @Param({ "200" })
+    private int numberOfParts;
+
+    private SolrDocumentMapper mapper;
+    private Tar tar;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mapper = new SolrDocumentMapper(new OcflObjectMetadataReader(), SolrIndexLayout.EMBEDDED);
+
+        var parts = IntStream.range(0, numberOfParts)
+            .mapToObj(i -> TarPart.builder()
+                .partName(String.format("%05d", i))
+                .checksumAlgorithm("md5")
+                .checksumValue("d41d8cd98f00b204e9800998ecf8427e")
+                .build())
+            .collect(Collectors.toList());
+
+        // stored search fields, so that reading metadata does not dominate
+        var versions = IntStream.range(0, numberOfVersions)
+            .mapToObj(i -> OcflObjectVersion.builder()
+                .bagId(String.format("urn:uuid:%08d", i))
+                .objectVersion(1)
+                .nbn(String.format("urn:nbn:nl:ui:13-%08d", i))
+                .searchFields("{\"purl_org_dc_terms_title\":[\"A title\"]}")
+                .title("A title")
+                .build())
+            .collect(Collectors.toList());
+
+        tar = Tar.builder()
+            .tarUuid("tar")
+            .vaultPath("vault")
+            .archivalDate(OffsetDateTime.now())
+            .tarParts(new ArrayList<>())
+            .ocflObjectVersions(new ArrayList<>())
+            .build();
+        tar.setTarParts(parts);
+        tar.setOcflObjectVersions(versions);
+    }
+
+    @Benchmark
+    public List<SolrInputDocument> fieldsPerVersion() {
+        return tar.getOcflObjectVersions().stream()
+            .map(mapper::mapOcflObjectVersion)
+            .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<SolrInputDocument> fieldsPerTar() {
+        return mapper.mapTar(tar);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(TarDocumentBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build())
+            .run();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.benchmark;
+
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.Tar;
+import nl.knaw.dans.catalog.db.TarDAO;
+import nl.knaw.dans.catalog.db.TarPart;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.HSQLDialect;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// registers a TAR with many parts against an in-memory HSQLDB, with and without JDBC batching
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TarInsertBenchmark {
+
+    @Param({ "1", "50" })
+    private int batchSize;
+
+    @Param({ "500" })
+    private int numberOfParts;
+
+    private SessionFactory sessionFactory;
+    private TarDAO tarDAO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = new Configuration()
+            .addAnnotatedClass(Tar.class)
+            .addAnnotatedClass(TarPart.class)
+            .addAnnotatedClass(OcflObjectVersion.class)
+            .setProperty(AvailableSettings.DRIVER, JDBCDriver.class.getName())
+            .setProperty(AvailableSettings.URL, "jdbc:hsqldb:mem:" + UUID.randomUUID())
+            .setProperty(AvailableSettings.DIALECT, HSQLDialect.class.getName())
+            .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+            .setProperty(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS, "thread")
+            .setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(batchSize))
+            .setProperty(AvailableSettings.ORDER_INSERTS, "true")
+            .setProperty(AvailableSettings.ORDER_UPDATES, "true")
+            .buildSessionFactory();
+
+        tarDAO = new TarDAO(sessionFactory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Tar saveTarWithParts() {
+        var tarUuid = UUID.randomUUID().toString();
+        var parts = IntStream.range(0, numberOfParts)
+            .mapToObj(i -> TarPart.builder()
+                .partName(String.format("%s-%05d", tarUuid, i))
+                .checksumAlgorithm("md5")
+                .checksumValue("d41d8cd98f00b204e9800998ecf8427e")
+                .build())
+            .collect(Collectors.toList());
+
+        var tar = Tar.builder()
+            .tarUuid(tarUuid)
+            .vaultPath("vault")
+            .archivalDate(OffsetDateTime.now())
+            .tarParts(parts)
+            .ocflObjectVersions(new ArrayList<>())
+            .build();
+
+        var session = sessionFactory.getCurrentSession();
+        var transaction = session.beginTransaction();
+
+        try {
+            var saved = tarDAO.save(tar);
+            transaction.commit();
+            return saved;
+        }
+        catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(TarInsertBenchmark.class.getSimpleName())
+            .build())
+            .run();
+    }
+}
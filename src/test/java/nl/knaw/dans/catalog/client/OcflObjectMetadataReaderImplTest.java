@@ -15,12 +15,26 @@
  */
 package nl.knaw.dans.catalog.client;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.solr.MetadataExtractor;
 import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader;
+import org.apache.jena.rdf.model.ModelFactory;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -42,6 +56,108 @@ class OcflObjectMetadataReaderImplTest {
             .contains("Even more descriptions");
     }
 
+    @Test
+    void readMetadata_should_parse_same_metadata_once_when_cached() throws Exception {
+        var metricRegistry = new MetricRegistry();
+        var config = new DdVaultCatalogConfiguration.MetadataConfig();
+        config.setCacheSize(10);
+        var reader = new OcflObjectMetadataReader(config, metricRegistry);
+        var json = readJson("vault-ingest-flow.jsonld");
+
+        var first = reader.readMetadata(json);
+        var second = reader.readMetadata(new String(json));
+        reader.readMetadata(readJson("dataverse.jsonld"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "cache-hits")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "cache-misses")).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    void readMetadata_should_extract_same_metadata_as_jena_when_streaming() throws Exception {
+        var metricRegistry = new MetricRegistry();
+        var json = withInlineOreContext(readJson("vault-ingest-flow.jsonld"));
+
+        var expected = new OcflObjectMetadataReader().readMetadata(json);
+        var result = streamingReader(metricRegistry).readMetadata(json);
+
+        assertThat(result.getMetadata()).isEqualTo(expected.getMetadata());
+        assertThat(result.getTitle()).isEqualTo(expected.getTitle());
+        assertThat(result.getDescription()).isEqualTo(expected.getDescription());
+        assertThat(metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "streaming-fallbacks")).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    void readMetadata_should_extract_same_metadata_as_jena_when_streaming_the_examples() throws Exception {
+        var metricRegistry = new MetricRegistry();
+        var mapper = new ObjectMapper();
+        var documents = new ArrayList<String>();
+
+        // the metadata of the OCFL objects in the example TAR in the root of the project, with an inline context with
+        // spaces in its terms, terms used as prefixes and nested objects
+        for (var ocflObject : mapper.readTree(Files.readString(Path.of("example1.json"))).get("ocfl_objects")) {
+            documents.add(mapper.writeValueAsString(ocflObject.get("metadata")));
+        }
+
+        documents.add(readJson("dataverse.jsonld"));
+
+        for (var json : documents) {
+            var expected = new OcflObjectMetadataReader().readMetadata(json);
+            var result = streamingReader(metricRegistry).readMetadata(json);
+
+            assertThat(result).as(json).isEqualTo(expected);
+        }
+
+        assertThat(metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "streaming-fallbacks")).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    void readMetadata_should_use_bundled_remote_context_for_both_extractors() throws Exception {
+        var metricRegistry = new MetricRegistry();
+        var json = readJson("vault-ingest-flow.jsonld");
+
+        var expected = new OcflObjectMetadataReader().readMetadata(json);
+        var result = streamingReader(metricRegistry).readMetadata(json);
+
+        assertThat(result).isEqualTo(expected);
+        assertThat(metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "streaming-fallbacks")).getCount()).isEqualTo(0);
+    }
+
+    @Test
+    void readMetadata_should_give_the_same_fields_as_jena_with_the_published_contexts() throws Exception {
+        for (var name : List.of("vault-ingest-flow.jsonld", "dataverse.jsonld")) {
+            var json = readJson(name);
+
+            // the document as is, so that Jena looks up the remote contexts instead of using the bundled ones
+            var model = ModelFactory.createDefaultModel();
+            model.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), null, "JSON-LD");
+
+            var expected = new HashMap<String, Set<String>>();
+            model.listStatements().forEach(statement -> {
+                if (statement.getObject().isLiteral()) {
+                    expected.computeIfAbsent(fieldName(statement.getPredicate().getURI()), k -> new HashSet<>())
+                        .add(statement.getObject().asLiteral().getValue().toString());
+                }
+            });
+
+            assertThat(new OcflObjectMetadataReader().readMetadata(json).getMetadata()).as(name).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void readMetadata_should_fall_back_to_jena_for_unsupported_json_ld() throws Exception {
+        var metricRegistry = new MetricRegistry();
+        var json = "{\"@context\": {\"dcterms\": \"http://purl.org/dc/terms/\"}, \"@id\": \"urn:x\", "
+            + "\"dcterms:creator\": {\"@context\": {\"name\": \"http://xmlns.com/foaf/0.1/name\"}, \"name\": \"Someone\"}}";
+
+        var expected = new OcflObjectMetadataReader().readMetadata(json);
+        var result = streamingReader(metricRegistry).readMetadata(json);
+
+        assertThat(result).isEqualTo(expected);
+        assertThat(result.getMetadata().get("xmlns_com_foaf_0_1_name")).containsOnly("Someone");
+        assertThat(metricRegistry.meter(MetricRegistry.name(OcflObjectMetadataReader.class, "streaming-fallbacks")).getCount()).isEqualTo(1);
+    }
+
     // TODO this is a nice little test class to populate solr
     // but it should not be a real test
     // think about how we can create some utility to call this code
@@ -79,6 +195,37 @@ class OcflObjectMetadataReaderImplTest {
     //        }
     //    }
 
+    private OcflObjectMetadataReader streamingReader(MetricRegistry metricRegistry) {
+        var config = new DdVaultCatalogConfiguration.MetadataConfig();
+        config.setCacheSize(0);
+        config.setExtractor(MetadataExtractor.STREAMING);
+        return new OcflObjectMetadataReader(config, metricRegistry);
+    }
+
+    // the same document with the bundled ORE context inlined, instead of referred to by its URL
+    private String withInlineOreContext(String json) throws Exception {
+        var mapper = new ObjectMapper();
+        var document = mapper.readTree(json);
+        var oreContext = mapper.readTree(Objects.requireNonNull(getClass().getResource("/jsonld/ore-context.jsonld"))).get("@context");
+
+        ((ArrayNode) document.get("@context")).set(0, oreContext);
+        return mapper.writeValueAsString(document);
+    }
+
+    // how the field names were made before they were interned
+    private String fieldName(String predicate) {
+        var uri = URI.create(predicate);
+        var stripped = uri.getSchemeSpecificPart();
+
+        if (uri.getFragment() != null) {
+            stripped += "#" + uri.getFragment();
+        }
+
+        return stripped.toLowerCase()
+            .replaceFirst("^//", "")
+            .replaceAll("[^a-zA-Z0-9]", "_");
+    }
+
     private String readJson(String name) throws Exception {
         var path = Objects.requireNonNull(getClass().getResource("/json/" + name)).getPath();
         return Files.readString(Path.of(path));
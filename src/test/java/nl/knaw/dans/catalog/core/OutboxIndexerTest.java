@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import nl.knaw.dans.catalog.db.IndexOutboxEntry;
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.Tar;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboxIndexerTest {
+    private final IndexOutboxRepository indexOutboxRepository = Mockito.mock(IndexOutboxRepository.class);
+    private final OcflObjectVersionRepository ocflObjectVersionRepository = Mockito.mock(OcflObjectVersionRepository.class);
+    private final TarRepository tarRepository = Mockito.mock(TarRepository.class);
+    private final SearchIndex searchIndex = Mockito.mock(SearchIndex.class);
+    private OutboxIndexer outboxIndexer;
+
+    @BeforeEach
+    void setUp() {
+        var config = new DdVaultCatalogConfiguration.OutboxConfig();
+        config.setInitialBackoff(io.dropwizard.util.Duration.seconds(5));
+        config.setMaxBackoff(io.dropwizard.util.Duration.minutes(1));
+
+        outboxIndexer = new OutboxIndexer(indexOutboxRepository, ocflObjectVersionRepository, tarRepository, searchIndex, config, new MetricRegistry());
+    }
+
+    @Test
+    void processBatch_should_index_current_state_and_delete_entries() {
+        var version = OcflObjectVersion.builder().bagId("bag1").objectVersion(1).build();
+        var tar = Tar.builder().tarUuid("tar1").build();
+        var entries = List.of(versionEntry("bag1", 1), versionEntry("bag1", 1), tarEntry("tar1"));
+
+        Mockito.doReturn(entries).when(indexOutboxRepository).findDue(Mockito.any(), Mockito.anyInt());
+        Mockito.doReturn(List.of(version)).when(ocflObjectVersionRepository).findAllByIds(Mockito.any());
+        Mockito.doReturn(Optional.of(tar)).when(tarRepository).getTarById("tar1");
+
+        assertThat(outboxIndexer.processBatch()).isEqualTo(3);
+
+        // duplicate entries for the same version are indexed once
+        Mockito.verify(ocflObjectVersionRepository).findAllByIds(Mockito.argThat(ids -> ids.size() == 1));
+        Mockito.verify(searchIndex).indexOcflObjectVersions(List.of(version));
+        Mockito.verify(searchIndex).indexTar(tar);
+        Mockito.verify(indexOutboxRepository).deleteAll(Mockito.argThat(done -> done.size() == 3));
+    }
+
+    @Test
+    void processBatch_should_only_update_tar_fields_of_versions_that_are_not_indexed_in_full() {
+        var version1 = OcflObjectVersion.builder().bagId("bag1").objectVersion(1).build();
+        var version2 = OcflObjectVersion.builder().bagId("bag2").objectVersion(1).build();
+        var entries = List.of(versionEntry("bag1", 1), membershipEntry("bag1", 1), membershipEntry("bag2", 1));
+
+        Mockito.doReturn(entries).when(indexOutboxRepository).findDue(Mockito.any(), Mockito.anyInt());
+        Mockito.doReturn(List.of(version1)).when(ocflObjectVersionRepository).findAllByIds(Mockito.argThat(ids -> ids != null && ids.contains(version1.getId())));
+        Mockito.doReturn(List.of(version2)).when(ocflObjectVersionRepository).findAllByIds(Mockito.argThat(ids -> ids != null && ids.contains(version2.getId())));
+
+        outboxIndexer.processBatch();
+
+        Mockito.verify(searchIndex).indexOcflObjectVersions(List.of(version1));
+        Mockito.verify(searchIndex).indexTarMembership(List.of(version2));
+        Mockito.verify(indexOutboxRepository).deleteAll(Mockito.argThat(done -> done.size() == 3));
+    }
+
+    @Test
+    void processBatch_should_coalesce_entries_for_the_same_version_or_tar_that_are_not_due_yet() {
+        var version = OcflObjectVersion.builder().bagId("bag1").objectVersion(1).build();
+        var tar = Tar.builder().tarUuid("tar1").build();
+        var due = List.of(withId(versionEntry("bag1", 1), 1L), withId(tarEntry("tar1"), 2L));
+        var all = new ArrayList<>(due);
+        all.addAll(List.of(withId(membershipEntry("bag1", 1), 3L), withId(versionEntry("bag1", 2), 4L), withId(tarEntry("tar1"), 5L)));
+
+        Mockito.doReturn(due).when(indexOutboxRepository).findDue(Mockito.any(), Mockito.anyInt());
+        Mockito.doReturn(all).when(indexOutboxRepository).findAllFor(Mockito.any(), Mockito.any());
+        Mockito.doReturn(List.of(version)).when(ocflObjectVersionRepository).findAllByIds(Mockito.any());
+        Mockito.doReturn(Optional.of(tar)).when(tarRepository).getTarById("tar1");
+
+        assertThat(outboxIndexer.processBatch()).isEqualTo(2);
+
+        Mockito.verify(searchIndex).indexOcflObjectVersions(List.of(version));
+        Mockito.verify(searchIndex).indexTar(tar);
+        Mockito.verify(searchIndex, Mockito.never()).indexTarMembership(Mockito.any());
+        // the entry for another version of the same bag is left for later
+        Mockito.verify(indexOutboxRepository).deleteAll(Mockito.argThat(done -> done.size() == 4 && done.stream().noneMatch(entry -> entry.getId() == 4L)));
+    }
+
+    @Test
+    void processBatch_should_reschedule_failed_entries_with_backoff() {
+        var tar = Tar.builder().tarUuid("tar1").build();
+        var entry = tarEntry("tar1");
+        entry.setAttempts(2);
+
+        Mockito.doReturn(List.of(entry)).when(indexOutboxRepository).findDue(Mockito.any(), Mockito.anyInt());
+        Mockito.doReturn(Optional.of(tar)).when(tarRepository).getTarById("tar1");
+        Mockito.doThrow(new SearchIndexException("Solr is down", null)).when(searchIndex).indexTar(tar);
+
+        var before = OffsetDateTime.now();
+        outboxIndexer.processBatch();
+
+        assertThat(entry.getAttempts()).isEqualTo(3);
+        assertThat(entry.getNextAttempt()).isAfterOrEqualTo(before.plusSeconds(20));
+        assertThat(entry.getLastError()).contains("Solr is down");
+        Mockito.verify(indexOutboxRepository).deleteAll(List.of());
+    }
+
+    @Test
+    void getBackoff_should_double_up_to_max_backoff() {
+        assertThat(outboxIndexer.getBackoff(1)).isEqualTo(Duration.ofSeconds(5));
+        assertThat(outboxIndexer.getBackoff(2)).isEqualTo(Duration.ofSeconds(10));
+        assertThat(outboxIndexer.getBackoff(4)).isEqualTo(Duration.ofSeconds(40));
+        assertThat(outboxIndexer.getBackoff(5)).isEqualTo(Duration.ofMinutes(1));
+        assertThat(outboxIndexer.getBackoff(100)).isEqualTo(Duration.ofMinutes(1));
+    }
+
+    private IndexOutboxEntry versionEntry(String bagId, int version) {
+        return IndexOutboxEntry.builder()
+            .type(IndexOutboxEntry.Type.OCFL_OBJECT_VERSION)
+            .bagId(bagId)
+            .objectVersion(version)
+            .created(OffsetDateTime.now())
+            .nextAttempt(OffsetDateTime.now())
+            .build();
+    }
+
+    private IndexOutboxEntry membershipEntry(String bagId, int version) {
+        var entry = versionEntry(bagId, version);
+        entry.setType(IndexOutboxEntry.Type.TAR_MEMBERSHIP);
+        return entry;
+    }
+
+    private IndexOutboxEntry withId(IndexOutboxEntry entry, long id) {
+        entry.setId(id);
+        return entry;
+    }
+
+    private IndexOutboxEntry tarEntry(String tarUuid) {
+        return IndexOutboxEntry.builder()
+            .type(IndexOutboxEntry.Type.TAR)
+            .tarUuid(tarUuid)
+            .created(OffsetDateTime.now())
+            .nextAttempt(OffsetDateTime.now())
+            .build();
+    }
+}
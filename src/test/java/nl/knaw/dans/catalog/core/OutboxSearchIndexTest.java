@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import nl.knaw.dans.catalog.core.solr.SolrIndexLayout;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OutboxSearchIndexTest {
+    private final IndexOutboxRepository indexOutboxRepository = Mockito.mock(IndexOutboxRepository.class);
+    private final SearchIndex target = Mockito.mock(SearchIndex.class);
+
+    @Test
+    void waitUntilVisible_should_commit_the_search_index_once_the_earlier_entries_were_sent() {
+        var outboxSearchIndex = outboxSearchIndex(Duration.seconds(10));
+
+        Mockito.doReturn(Optional.of(OffsetDateTime.now().minusSeconds(1)), Optional.of(OffsetDateTime.now().plusSeconds(1)))
+            .when(indexOutboxRepository).findOldestCreated();
+
+        outboxSearchIndex.waitUntilVisible();
+
+        Mockito.verify(indexOutboxRepository, Mockito.times(2)).findOldestCreated();
+        Mockito.verify(target).waitUntilVisible();
+    }
+
+    @Test
+    void waitUntilVisible_should_give_up_when_the_entries_are_not_sent_within_the_timeout() {
+        var outboxSearchIndex = outboxSearchIndex(Duration.milliseconds(200));
+
+        Mockito.doReturn(Optional.of(OffsetDateTime.now().minusSeconds(1)))
+            .when(indexOutboxRepository).findOldestCreated();
+
+        assertThrows(SearchIndexException.class, outboxSearchIndex::waitUntilVisible);
+        Mockito.verify(target, Mockito.never()).waitUntilVisible();
+    }
+
+    private OutboxSearchIndex outboxSearchIndex(Duration visibilityTimeout) {
+        var config = new DdVaultCatalogConfiguration.OutboxConfig();
+        config.setVisibilityTimeout(visibilityTimeout);
+        return new OutboxSearchIndex(indexOutboxRepository, config, SolrIndexLayout.EMBEDDED, target);
+    }
+}
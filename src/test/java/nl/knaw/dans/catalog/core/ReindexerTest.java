@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core;
+
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.ReindexCheckpoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReindexerTest {
+    private final OcflObjectVersionRepository ocflObjectVersionRepository = Mockito.mock(OcflObjectVersionRepository.class);
+    private final ReindexCheckpointRepository reindexCheckpointRepository = Mockito.mock(ReindexCheckpointRepository.class);
+    private final SearchIndex searchIndex = Mockito.mock(SearchIndex.class);
+    private Reindexer reindexer;
+
+    @BeforeEach
+    void setUp() {
+        var config = new DdVaultCatalogConfiguration.ReindexConfig();
+        config.setPageSize(2);
+        config.setWorkers(2);
+
+        reindexer = new Reindexer(ocflObjectVersionRepository, reindexCheckpointRepository, searchIndex, config);
+    }
+
+    @Test
+    void reindex_should_read_all_pages_and_make_documents_visible_once() throws Exception {
+        var version1 = version("bag1", 1);
+        var version2 = version("bag1", 2);
+        var version3 = version("bag2", 1);
+
+        Mockito.doReturn(List.of(version1, version2)).when(ocflObjectVersionRepository).findPage(ReindexScope.all(), null, 2);
+        Mockito.doReturn(List.of(version3)).when(ocflObjectVersionRepository).findPage(ReindexScope.all(), version2.getId(), 2);
+        Mockito.doReturn(List.of()).when(ocflObjectVersionRepository).findPage(ReindexScope.all(), version3.getId(), 2);
+
+        var result = reindexer.reindex(ReindexScope.all(), false);
+
+        assertThat(result.getOcflObjectVersions()).isEqualTo(3);
+        assertThat(result.isComplete()).isTrue();
+        Mockito.verify(searchIndex).indexOcflObjectVersions(List.of(version1, version2));
+        Mockito.verify(searchIndex).indexOcflObjectVersions(List.of(version3));
+        Mockito.verify(searchIndex, Mockito.times(1)).waitUntilVisible();
+        Mockito.verify(reindexCheckpointRepository).save(Mockito.argThat(checkpoint ->
+            checkpoint.isCompleted() && "bag2".equals(checkpoint.getLastBagId()) && checkpoint.getOcflObjectVersions() == 3));
+        // without resume the previous checkpoint is not looked at
+        Mockito.verify(reindexCheckpointRepository, Mockito.never()).findByName(Mockito.any());
+    }
+
+    @Test
+    void reindex_should_only_leave_out_versions_that_cannot_be_indexed() throws Exception {
+        var version1 = version("bag1", 1);
+        var version2 = version("bag1", 2);
+
+        Mockito.doReturn(List.of(version1, version2)).when(ocflObjectVersionRepository).findPage(ReindexScope.all(), null, 2);
+        Mockito.doReturn(List.of()).when(ocflObjectVersionRepository).findPage(ReindexScope.all(), version2.getId(), 2);
+        Mockito.doThrow(new SearchIndexException("invalid metadata", null)).when(searchIndex).indexOcflObjectVersions(Mockito.any());
+        Mockito.doThrow(new SearchIndexException("invalid metadata", null)).when(searchIndex).indexOcflObjectVersion(version1);
+
+        var result = reindexer.reindex(ReindexScope.all(), false);
+
+        assertThat(result.getFailed()).isEqualTo(1);
+        assertThat(result.isComplete()).isFalse();
+        Mockito.verify(searchIndex).indexOcflObjectVersion(version2);
+    }
+
+    @Test
+    void reindex_should_resume_after_checkpoint_of_same_scope() throws Exception {
+        var version3 = version("bag2", 1);
+        var scope = ReindexScope.builder().from("bag1").to("bag3").build();
+        var checkpoint = ReindexCheckpoint.builder()
+            .name(scope.getName())
+            .lastBagId("bag1")
+            .lastObjectVersion(2)
+            .ocflObjectVersions(2)
+            .updated(OffsetDateTime.now())
+            .build();
+
+        Mockito.doReturn(Optional.of(checkpoint)).when(reindexCheckpointRepository).findByName(scope.getName());
+        Mockito.doReturn(List.of(version3)).when(ocflObjectVersionRepository).findPage(scope, new OcflObjectVersionId("bag1", 2), 2);
+        Mockito.doReturn(List.of()).when(ocflObjectVersionRepository).findPage(scope, version3.getId(), 2);
+
+        var result = reindexer.reindex(scope, true);
+
+        assertThat(result.getOcflObjectVersions()).isEqualTo(3);
+        Mockito.verify(searchIndex, Mockito.times(1)).indexOcflObjectVersions(Mockito.any());
+        Mockito.verify(searchIndex).indexOcflObjectVersions(List.of(version3));
+    }
+
+    @Test
+    void reindex_should_not_repeat_completed_reindex() throws Exception {
+        var name = ReindexScope.all().getName();
+        var checkpoint = ReindexCheckpoint.builder()
+            .name(name)
+            .lastBagId("bag2")
+            .lastObjectVersion(1)
+            .ocflObjectVersions(3)
+            .completed(true)
+            .updated(OffsetDateTime.now())
+            .build();
+
+        Mockito.doReturn(Optional.of(checkpoint)).when(reindexCheckpointRepository).findByName(name);
+
+        assertThat(reindexer.reindex(ReindexScope.all(), true).isComplete()).isTrue();
+        Mockito.verifyNoInteractions(ocflObjectVersionRepository, searchIndex);
+    }
+
+    private OcflObjectVersion version(String bagId, int objectVersion) {
+        return OcflObjectVersion.builder()
+            .bagId(bagId)
+            .objectVersion(objectVersion)
+            .build();
+    }
+}
@@ -15,10 +15,16 @@
  */
 package nl.knaw.dans.catalog.core;
 
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.catalog.DdVaultCatalogConfiguration;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionBulkItem;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionBulkResult;
 import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionParameters;
 import nl.knaw.dans.catalog.core.domain.TarParameters;
 import nl.knaw.dans.catalog.core.exception.OcflObjectVersionAlreadyInTarException;
 import nl.knaw.dans.catalog.core.exception.TarAlreadyExistsException;
+import nl.knaw.dans.catalog.core.solr.OcflObjectMetadataReader;
 import nl.knaw.dans.catalog.db.OcflObjectVersion;
 import nl.knaw.dans.catalog.db.Tar;
 import org.junit.jupiter.api.Test;
@@ -26,8 +32,11 @@ import org.mockito.Mockito;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -39,7 +48,7 @@ class UseCasesTest {
         var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
         var tarRepo = Mockito.mock(TarRepository.class);
         var searchIndex = Mockito.mock(SearchIndex.class);
-        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), new CatalogReadCache());
 
         Mockito.doReturn(Optional.of(Tar.builder().tarUuid("fake-id").build()))
                 .when(tarRepo).getTarById(Mockito.eq("fake-id"));
@@ -55,7 +64,7 @@ class UseCasesTest {
         var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
         var tarRepo = Mockito.mock(TarRepository.class);
         var searchIndex = Mockito.mock(SearchIndex.class);
-        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), new CatalogReadCache());
 
         var ocflObjectVersion = OcflObjectVersion.builder()
                 .bagId("bagid")
@@ -75,12 +84,41 @@ class UseCasesTest {
         );
     }
 
+    @Test
+    void createTar_should_only_index_the_membership_of_the_versions_when_indexTar_does_not() throws Exception {
+        for (var tarIndexedWithItsVersions : List.of(true, false)) {
+            var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
+            var tarRepo = Mockito.mock(TarRepository.class);
+            var searchIndex = Mockito.mock(SearchIndex.class);
+            var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), new CatalogReadCache());
+            var ocflObjectVersion = OcflObjectVersion.builder().bagId("bagid").objectVersion(1).build();
+
+            Mockito.doReturn(List.of(ocflObjectVersion))
+                    .when(ocflObjectRepo).findAll(Mockito.any());
+
+            Mockito.doAnswer(invocation -> invocation.getArgument(0))
+                    .when(tarRepo).save(Mockito.any());
+
+            Mockito.doReturn(tarIndexedWithItsVersions)
+                    .when(searchIndex).isTarIndexedWithItsVersions();
+
+            var tar = usecases.createTar("fake-id", TarParameters.builder()
+                    .vaultPath("path/1")
+                    .tarParts(new ArrayList<>())
+                    .versions(List.of(new OcflObjectVersionId("bagid", 1)))
+                    .build());
+
+            Mockito.verify(searchIndex).indexTar(tar);
+            Mockito.verify(searchIndex, Mockito.times(tarIndexedWithItsVersions ? 0 : 1)).indexTarMembership(List.of(ocflObjectVersion));
+        }
+    }
+
     @Test
     void updateTar_should_not_throw_OcflObjectVersionAlreadyInTarException_if_version_belongs_to_same_tar() throws Exception {
         var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
         var tarRepo = Mockito.mock(TarRepository.class);
         var searchIndex = Mockito.mock(SearchIndex.class);
-        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), new CatalogReadCache());
         var tar = Tar.builder().tarUuid("fake-id").tarParts(new ArrayList<>()).build();
 
         var ocflObjectVersion = OcflObjectVersion.builder()
@@ -104,4 +142,204 @@ class UseCasesTest {
                 )
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    void updateTar_should_index_versions_that_were_added_or_removed() throws Exception {
+        var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
+        var tarRepo = Mockito.mock(TarRepository.class);
+        var searchIndex = Mockito.mock(SearchIndex.class);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), new CatalogReadCache());
+        var tar = Tar.builder().tarUuid("fake-id").tarParts(new ArrayList<>()).build();
+
+        var kept = OcflObjectVersion.builder().bagId("bagid").objectVersion(1).build();
+        var removed = OcflObjectVersion.builder().bagId("bagid").objectVersion(2).build();
+        var added = OcflObjectVersion.builder().bagId("bagid").objectVersion(3).build();
+        tar.setOcflObjectVersions(List.of(kept, removed));
+
+        Mockito.doReturn(Optional.of(tar))
+                .when(tarRepo).getTarById(Mockito.eq("fake-id"));
+
+        Mockito.doReturn(List.of(kept, added))
+                .when(ocflObjectRepo).findAll(Mockito.any());
+
+        Mockito.doAnswer(invocation -> invocation.getArgument(0))
+                .when(tarRepo).save(Mockito.any());
+
+        usecases.updateTar("fake-id", TarParameters.builder()
+                .vaultPath("path/1")
+                .tarParts(new ArrayList<>())
+                .versions(List.of(new OcflObjectVersionId("bagid", 1), new OcflObjectVersionId("bagid", 3)))
+                .build());
+
+        assertThat(removed.getTar()).isNull();
+        Mockito.verify(searchIndex).indexTar(tar);
+        Mockito.verify(searchIndex).indexTarMembership(List.of(removed, added));
+    }
+
+    @Test
+    void createOcflObjectVersions_should_report_conflicts_for_existing_and_duplicate_versions() {
+        var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
+        var tarRepo = Mockito.mock(TarRepository.class);
+        var searchIndex = Mockito.mock(SearchIndex.class);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), new CatalogReadCache());
+
+        var existing = OcflObjectVersion.builder()
+                .bagId("existing")
+                .objectVersion(1)
+                .build();
+
+        var skeleton = OcflObjectVersion.builder()
+                .bagId("skeleton")
+                .objectVersion(1)
+                .skeletonRecord(true)
+                .build();
+
+        Mockito.doReturn(List.of(existing, skeleton))
+                .when(ocflObjectRepo).findAllByIds(Mockito.any());
+
+        Mockito.doAnswer(invocation -> new ArrayList<>(invocation.<List<OcflObjectVersion>>getArgument(0)))
+                .when(ocflObjectRepo).saveAll(Mockito.any(), Mockito.any());
+
+        var parameters = OcflObjectVersionParameters.builder().nbn("nbn").build();
+        var results = usecases.createOcflObjectVersions(List.of(
+                OcflObjectVersionBulkItem.builder().id(new OcflObjectVersionId("new", 1)).parameters(parameters).build(),
+                OcflObjectVersionBulkItem.builder().id(new OcflObjectVersionId("existing", 1)).parameters(parameters).build(),
+                OcflObjectVersionBulkItem.builder().id(new OcflObjectVersionId("skeleton", 1)).parameters(parameters).build(),
+                OcflObjectVersionBulkItem.builder().id(new OcflObjectVersionId("new", 1)).parameters(parameters).build()
+        ));
+
+        assertThat(results)
+                .extracting(OcflObjectVersionBulkResult::getStatus)
+                .containsExactly(
+                        OcflObjectVersionBulkResult.Status.CREATED,
+                        OcflObjectVersionBulkResult.Status.CONFLICT,
+                        OcflObjectVersionBulkResult.Status.CREATED,
+                        OcflObjectVersionBulkResult.Status.CONFLICT
+                );
+
+        Mockito.verify(ocflObjectRepo).saveAll(Mockito.argThat(versions -> versions.size() == 2),
+                Mockito.argThat(existingVersions -> existingVersions.keySet().equals(Set.of(existing.getId(), skeleton.getId()))));
+        Mockito.verify(ocflObjectRepo, Mockito.times(1)).findAllByIds(Mockito.any());
+        Mockito.verify(searchIndex).indexOcflObjectVersions(Mockito.argThat(versions -> versions.size() == 2));
+    }
+
+    @Test
+    void createOcflObjectVersion_should_store_search_fields_extracted_from_metadata() throws Exception {
+        var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
+        var tarRepo = Mockito.mock(TarRepository.class);
+        var searchIndex = Mockito.mock(SearchIndex.class);
+        var reader = new OcflObjectMetadataReader();
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, reader, new CatalogReadCache());
+
+        Mockito.doAnswer(invocation -> invocation.getArgument(0))
+                .when(ocflObjectRepo).save(Mockito.any());
+
+        var parameters = OcflObjectVersionParameters.builder()
+                .nbn("nbn")
+                .metadata(Map.of(
+                        "@context", Map.of("dcterms", "http://purl.org/dc/terms/", "ore", "http://www.openarchives.org/ore/terms/"),
+                        "@id", "urn:uuid:1",
+                        "@type", "ore:Aggregation",
+                        "dcterms:title", "A title"))
+                .build();
+
+        var result = usecases.createOcflObjectVersion(new OcflObjectVersionId("bagid", 1), parameters);
+
+        assertThat(result.getTitle()).isEqualTo("A title");
+        assertThat(result.getSearchFields()).isNotNull();
+        assertThat(reader.getSearchFields(result)).isEqualTo(reader.readMetadata(result.getMetadata()));
+    }
+
+    @Test
+    void findOcflObjectVersionByBagIdAndVersion_should_read_the_database_once_until_the_version_changes() throws Exception {
+        var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
+        var tarRepo = Mockito.mock(TarRepository.class);
+        var searchIndex = Mockito.mock(SearchIndex.class);
+        var readCache = new CatalogReadCache(new DdVaultCatalogConfiguration.ReadCacheConfig(), new MetricRegistry(), Runnable::run);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), readCache);
+
+        var skeleton = OcflObjectVersion.builder().bagId("bagid").objectVersion(1).skeletonRecord(true).build();
+
+        Mockito.doReturn(Optional.of(skeleton))
+                .when(ocflObjectRepo).findByBagIdAndVersion("bagid", 1);
+
+        Mockito.doAnswer(invocation -> invocation.getArgument(0))
+                .when(ocflObjectRepo).save(Mockito.any());
+
+        assertThat(usecases.findOcflObjectVersionByBagIdAndVersion("bagid", 1).orElseThrow().isSkeletonRecord()).isTrue();
+        assertThat(usecases.findOcflObjectVersionByBagIdAndVersion("bagid", 1).orElseThrow().isSkeletonRecord()).isTrue();
+        Mockito.verify(ocflObjectRepo, Mockito.times(1)).findByBagIdAndVersion("bagid", 1);
+
+        var created = usecases.createOcflObjectVersion(new OcflObjectVersionId("bagid", 1), OcflObjectVersionParameters.builder().nbn("nbn").build());
+
+        Mockito.doReturn(Optional.of(created))
+                .when(ocflObjectRepo).findByBagIdAndVersion("bagid", 1);
+
+        assertThat(usecases.findOcflObjectVersionByBagIdAndVersion("bagid", 1).orElseThrow().getNbn()).isEqualTo("nbn");
+    }
+
+    @Test
+    void updateTar_should_invalidate_the_tar_and_the_versions_that_were_in_it() throws Exception {
+        var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
+        var tarRepo = Mockito.mock(TarRepository.class);
+        var searchIndex = Mockito.mock(SearchIndex.class);
+        var readCache = new CatalogReadCache(new DdVaultCatalogConfiguration.ReadCacheConfig(), new MetricRegistry(), Runnable::run);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), readCache);
+        var tar = Tar.builder().tarUuid("fake-id").tarParts(new ArrayList<>()).build();
+
+        var removed = OcflObjectVersion.builder().bagId("bagid").objectVersion(1).nbn("nbn").build();
+        tar.setOcflObjectVersions(List.of(removed));
+
+        Mockito.doReturn(Optional.of(tar))
+                .when(tarRepo).getTarById(Mockito.eq("fake-id"));
+
+        Mockito.doAnswer(invocation -> List.of(removed))
+                .when(ocflObjectRepo).findByNbn("nbn");
+
+        Mockito.doAnswer(invocation -> invocation.getArgument(0))
+                .when(tarRepo).save(Mockito.any());
+
+        assertThat(usecases.findOcflObjectVersionsByNbn("nbn")).extracting("tarUuid").containsExactly("fake-id");
+        assertThat(usecases.findTarById("fake-id").orElseThrow().getOcflObjectVersions()).hasSize(1);
+
+        usecases.updateTar("fake-id", TarParameters.builder()
+                .vaultPath("path/1")
+                .tarParts(new ArrayList<>())
+                .versions(List.of())
+                .build());
+
+        assertThat(usecases.findOcflObjectVersionsByNbn("nbn")).extracting("tarUuid").containsOnlyNulls();
+        assertThat(usecases.findTarById("fake-id").orElseThrow().getOcflObjectVersions()).isEmpty();
+        Mockito.verify(ocflObjectRepo, Mockito.times(2)).findByNbn("nbn");
+        Mockito.verify(tarRepo, Mockito.times(3)).getTarById("fake-id");
+    }
+
+    @Test
+    void findOcflObjectVersionByBagIdAndVersion_should_not_keep_a_result_read_before_the_write_committed() throws Exception {
+        var ocflObjectRepo = Mockito.mock(OcflObjectVersionRepository.class);
+        var tarRepo = Mockito.mock(TarRepository.class);
+        var searchIndex = Mockito.mock(SearchIndex.class);
+        var afterCommit = new ArrayList<Runnable>();
+        var readCache = new CatalogReadCache(new DdVaultCatalogConfiguration.ReadCacheConfig(), new MetricRegistry(), afterCommit::add);
+        var usecases = new UseCases(ocflObjectRepo, tarRepo, searchIndex, new OcflObjectMetadataReader(), readCache);
+
+        var skeleton = OcflObjectVersion.builder().bagId("bagid").objectVersion(1).skeletonRecord(true).build();
+
+        Mockito.doReturn(Optional.of(skeleton))
+                .when(ocflObjectRepo).findByBagIdAndVersion("bagid", 1);
+
+        Mockito.doAnswer(invocation -> invocation.getArgument(0))
+                .when(ocflObjectRepo).save(Mockito.any());
+
+        var created = usecases.createOcflObjectVersion(new OcflObjectVersionId("bagid", 1), OcflObjectVersionParameters.builder().nbn("nbn").build());
+
+        // the write has not committed yet, so another transaction still reads the skeleton record
+        assertThat(usecases.findOcflObjectVersionByBagIdAndVersion("bagid", 1).orElseThrow().isSkeletonRecord()).isTrue();
+
+        Mockito.doReturn(Optional.of(created))
+                .when(ocflObjectRepo).findByBagIdAndVersion("bagid", 1);
+        afterCommit.forEach(Runnable::run);
+
+        assertThat(usecases.findOcflObjectVersionByBagIdAndVersion("bagid", 1).orElseThrow().getNbn()).isEqualTo("nbn");
+    }
+}
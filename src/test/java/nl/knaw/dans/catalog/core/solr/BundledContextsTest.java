@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BundledContextsTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void inline_should_replace_bundled_context_and_leave_unknown_context_to_jena() throws Exception {
+        var bundledContexts = new BundledContexts(objectMapper);
+        var document = objectMapper.readTree(
+            "{\"@context\": [\"https://w3id.org/ore/context\", \"https://example.org/context\"], \"@id\": \"urn:x\"}");
+
+        bundledContexts.inline(document);
+
+        var context = document.get("@context");
+        assertThat(context.get(0)).isEqualTo(bundledContexts.getDefinition("https://w3id.org/ore/context"));
+        assertThat(context.get(1).textValue()).isEqualTo("https://example.org/context");
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SolrAliasSwitcherTest {
+
+    @Test
+    void switchIfComplete_should_switch_when_the_count_is_within_the_range_of_the_database() {
+        for (var count : new long[] { 10, 11, 12 }) {
+            var collections = new FakeSolrCollections();
+            collections.counts.put("alias_new", count);
+            collections.aliased = "alias_old";
+
+            var previous = new SolrAliasSwitcher(collections).switchIfComplete("alias_new", 10, 12);
+
+            assertThat(previous).contains("alias_old");
+            assertThat(collections.aliased).isEqualTo("alias_new");
+        }
+    }
+
+    @Test
+    void switchIfComplete_should_not_switch_when_the_count_is_outside_the_range_of_the_database() {
+        for (var count : new long[] { 9, 13 }) {
+            var collections = new FakeSolrCollections();
+            collections.counts.put("alias_new", count);
+            collections.aliased = "alias_old";
+
+            assertThrows(SearchIndexException.class, () -> new SolrAliasSwitcher(collections).switchIfComplete("alias_new", 10, 12));
+            assertThat(collections.aliased).isEqualTo("alias_old");
+            assertThat(collections.properties).isEmpty();
+        }
+    }
+
+    @Test
+    void rollback_should_point_the_alias_back_to_the_collection_before_the_switch() {
+        var collections = new FakeSolrCollections();
+        var switcher = new SolrAliasSwitcher(collections);
+        collections.aliased = "alias_1";
+
+        switcher.switchTo("alias_2");
+        assertThat(switcher.rollback()).isEqualTo("alias_1");
+        assertThat(collections.aliased).isEqualTo("alias_1");
+
+        // the rollback is a switch as well, so it can be undone
+        assertThat(switcher.rollback()).isEqualTo("alias_2");
+        assertThat(collections.aliased).isEqualTo("alias_2");
+    }
+
+    @Test
+    void rollback_should_fail_when_the_alias_was_never_switched() {
+        var collections = new FakeSolrCollections();
+        var switcher = new SolrAliasSwitcher(collections);
+
+        // the first switch creates the alias, so there is nothing to go back to
+        assertThat(switcher.switchTo("alias_1")).isEmpty();
+        assertThrows(IllegalStateException.class, switcher::rollback);
+        assertThat(collections.aliased).isEqualTo("alias_1");
+    }
+
+    private static class FakeSolrCollections implements SolrCollections {
+        private final Map<String, Long> counts = new HashMap<>();
+        private final Map<String, String> properties = new HashMap<>();
+        private String aliased;
+
+        @Override
+        public String getAlias() {
+            return "alias";
+        }
+
+        @Override
+        public void createCollection(String collection) {
+            counts.put(collection, 0L);
+        }
+
+        @Override
+        public Optional<String> getAliasedCollection() {
+            return Optional.ofNullable(aliased);
+        }
+
+        @Override
+        public void setAlias(String collection) {
+            aliased = collection;
+        }
+
+        @Override
+        public Optional<String> getAliasProperty(String name) {
+            return Optional.ofNullable(properties.get(name));
+        }
+
+        @Override
+        public void setAliasProperty(String name, String value) {
+            properties.put(name, value);
+        }
+
+        @Override
+        public long countOcflObjectVersions(String collection) {
+            return counts.get(collection);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
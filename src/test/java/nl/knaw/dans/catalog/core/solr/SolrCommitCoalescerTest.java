@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SolrCommitCoalescerTest {
+
+    @Test
+    void requestCommit_should_share_one_commit_between_requests_made_during_a_running_commit() throws Exception {
+        var solrClient = Mockito.mock(SolrClient.class);
+        var commitStarted = new CountDownLatch(1);
+        var releaseCommit = new CountDownLatch(1);
+
+        Mockito.doAnswer(invocation -> {
+            commitStarted.countDown();
+            releaseCommit.await(10, TimeUnit.SECONDS);
+            return new UpdateResponse();
+        }).when(solrClient).commit("collection", true, true, true);
+
+        var coalescer = new SolrCommitCoalescer(solrClient, "collection", true);
+        var first = coalescer.requestCommit();
+        assertThat(commitStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+        var waiting = new ArrayList<CompletableFuture<Void>>();
+
+        for (var i = 0; i < 5; ++i) {
+            waiting.add(coalescer.requestCommit());
+        }
+
+        releaseCommit.countDown();
+        first.get(10, TimeUnit.SECONDS);
+
+        for (var future : waiting) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(waiting).allMatch(future -> future == waiting.get(0));
+        Mockito.verify(solrClient, Mockito.times(2)).commit("collection", true, true, true);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.Tar;
+import nl.knaw.dans.catalog.db.TarPart;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SolrDocumentMapperTest {
+    private final SolrDocumentMapper mapper = new SolrDocumentMapper(new OcflObjectMetadataReader(), SolrIndexLayout.EMBEDDED);
+
+    @Test
+    void mapTar_should_share_the_tar_fields_between_documents() {
+        var tar = createTar();
+        var documents = mapper.mapTar(tar);
+
+        assertThat(documents).hasSize(2);
+        assertThat(documents.get(0).getFieldValues("tar_part_name")).containsExactly("0000", "0001");
+        assertThat(documents.get(0).getFieldValues("tar_part_checksum_value")).containsExactly("cs0", "cs1");
+        assertThat(documents.get(1).getFieldValue("tar_id")).isEqualTo("tar1");
+        assertThat(documents.get(1).getFieldValues("tar_part_name")).isSameAs(documents.get(0).getFieldValues("tar_part_name"));
+    }
+
+    @Test
+    void mapTar_should_map_the_same_fields_as_mapOcflObjectVersion() {
+        var tar = createTar();
+        var documents = mapper.mapTar(tar);
+        var version = tar.getOcflObjectVersions().get(1);
+        var single = mapper.mapOcflObjectVersion(version);
+
+        assertThat(documents.get(1).getFieldNames()).isEqualTo(single.getFieldNames());
+
+        for (var name : single.getFieldNames()) {
+            assertThat(documents.get(1).getFieldValues(name)).containsExactlyElementsOf(single.getFieldValues(name));
+        }
+    }
+
+    @Test
+    void mapTar_should_only_map_the_tar_document_with_the_joined_layout() {
+        var joined = new SolrDocumentMapper(new OcflObjectMetadataReader(), SolrIndexLayout.JOINED);
+        var documents = joined.mapTar(createTar());
+
+        assertThat(documents).hasSize(1);
+        assertThat(documents.get(0).getFieldValue("id")).isEqualTo("tar:tar1");
+        assertThat(documents.get(0).getFieldValue("doc_type")).isEqualTo("tar");
+        assertThat(documents.get(0).getFieldValue("tar_id")).isEqualTo("tar1");
+        assertThat(documents.get(0).getFieldValues("tar_part_name")).containsExactly("0000", "0001");
+    }
+
+    @Test
+    void mapOcflObjectVersions_should_refer_to_the_tar_document_with_the_joined_layout() {
+        var joined = new SolrDocumentMapper(new OcflObjectMetadataReader(), SolrIndexLayout.JOINED);
+        var documents = joined.mapOcflObjectVersions(createTar().getOcflObjectVersions());
+
+        assertThat(documents).hasSize(3);
+        assertThat(documents.get(0).getFieldValue("doc_type")).isEqualTo("ocfl_object_version");
+        assertThat(documents.get(0).getFieldValue("tar_id")).isEqualTo("tar1");
+        assertThat(documents.get(0).containsKey("tar_part_name")).isFalse();
+        assertThat(documents.get(2).getFieldValue("id")).isEqualTo("tar:tar1");
+    }
+
+    @Test
+    void mapTarFields_should_only_set_the_tar_fields_of_existing_documents() {
+        var tar = createTar();
+        var removed = OcflObjectVersion.builder().bagId("urn:uuid:other").objectVersion(1).nbn("urn:nbn:nl:ui:13-3").build();
+        var versions = tar.getOcflObjectVersions();
+        versions.add(removed);
+
+        var documents = mapper.mapTarFields(versions);
+
+        assertThat(documents).hasSize(3);
+        assertThat(documents.get(0).getFieldNames()).containsExactlyInAnyOrder("id", "_version_", "tar_fingerprint",
+            "tar_id", "tar_vault_path", "tar_archival_date", "tar_part_name", "tar_part_checksum_algorithm", "tar_part_checksum_value");
+        assertThat(documents.get(0).getFieldValue("_version_")).isEqualTo(1L);
+        assertThat(documents.get(0).getFieldValue("tar_id")).isEqualTo(Map.of("set", "tar1"));
+        assertThat(documents.get(0).getFieldValue("tar_part_name")).isEqualTo(Map.of("set", List.of("0000", "0001")));
+        assertThat(documents.get(2).getFieldValue("id")).isEqualTo("urn:uuid:other/1");
+        assertThat(documents.get(2).getFieldValue("tar_id")).isEqualTo(Collections.singletonMap("set", null));
+    }
+
+    @Test
+    void mapOcflObjectVersion_should_add_a_fingerprint_that_only_changes_with_the_fields() {
+        var version = createTar().getOcflObjectVersions().get(0);
+        var fingerprint = mapper.mapOcflObjectVersion(version).getFieldValue("fingerprint");
+
+        assertThat(fingerprint).isNotNull();
+        assertThat(mapper.mapOcflObjectVersion(version).getFieldValue("fingerprint")).isEqualTo(fingerprint);
+
+        version.setSwordToken("sword:token");
+        assertThat(mapper.mapOcflObjectVersion(version).getFieldValue("fingerprint")).isNotEqualTo(fingerprint);
+    }
+
+    private Tar createTar() {
+        var tar = Tar.builder()
+            .tarUuid("tar1")
+            .vaultPath("path")
+            .archivalDate(OffsetDateTime.now())
+            .build();
+
+        tar.setTarParts(List.of(
+            TarPart.builder().partName("0000").checksumAlgorithm("md5").checksumValue("cs0").build(),
+            TarPart.builder().partName("0001").checksumAlgorithm("md5").checksumValue("cs1").build()));
+
+        var versions = new ArrayList<OcflObjectVersion>();
+
+        for (var i = 1; i <= 2; i++) {
+            versions.add(OcflObjectVersion.builder()
+                .bagId("urn:uuid:bag")
+                .objectVersion(i)
+                .nbn("urn:nbn:nl:ui:13-" + i)
+                .searchFields("{}")
+                .build());
+        }
+
+        tar.setOcflObjectVersions(versions);
+        return tar;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import nl.knaw.dans.catalog.db.OcflObjectVersion;
+import nl.knaw.dans.catalog.db.Tar;
+import nl.knaw.dans.catalog.db.TarPart;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SolrIndexCheckerTest {
+
+    @Test
+    void diff_should_report_missing_stale_and_orphaned_entries() {
+        var database = List.of(entry("bag1", 1, "a"), entry("bag1", 2, "b"), entry("bag2", 1, "c"), entry("bag4", 1, "e"));
+        var index = List.of(entry("bag1", 1, "a"), entry("bag1", 2, "x"), entry("bag3", 1, "d"), entry("bag4", 1, null));
+        var differences = new RecordedDifferences();
+
+        SolrIndexChecker.diff(database.iterator(), index.iterator(), differences);
+
+        assertThat(differences.same).containsExactly("bag1/1");
+        assertThat(differences.stale).containsExactly("bag1/2", "bag4/1");
+        assertThat(differences.missing).containsExactly("bag2/1");
+        assertThat(differences.orphaned).containsExactly("bag3/1");
+    }
+
+    @Test
+    void diff_should_compare_object_versions_as_numbers() {
+        var database = List.of(entry("bag1", 2, "a"), entry("bag1", 10, "b"));
+        var index = List.of(entry("bag1", 2, "a"), entry("bag1", 10, "b"));
+        var differences = new RecordedDifferences();
+
+        SolrIndexChecker.diff(database.iterator(), index.iterator(), differences);
+
+        assertThat(differences.same).containsExactly("bag1/2", "bag1/10");
+    }
+
+    @Test
+    void diff_should_fail_when_entries_are_not_sorted() {
+        var database = List.of(entry("bag2", 1, "a"), entry("bag1", 1, "b"));
+
+        assertThatThrownBy(() -> SolrIndexChecker.diff(database.iterator(), List.<SolrIndexChecker.Entry> of().iterator(), new RecordedDifferences()))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void diff_should_not_report_a_version_of_which_only_the_tar_fields_were_updated() {
+        for (var layout : SolrIndexLayout.values()) {
+            var mapper = new SolrDocumentMapper(new OcflObjectMetadataReader(), layout);
+            var version = OcflObjectVersion.builder().bagId("urn:uuid:bag").objectVersion(1).nbn("urn:nbn:nl:ui:13-1").searchFields("{}").build();
+
+            // indexed before the version was in a TAR, and updated atomically when the TAR was registered
+            var indexed = mapper.mapOcflObjectVersions(List.of(version)).get(0);
+            var tar = Tar.builder().tarUuid("tar1").vaultPath("path").archivalDate(OffsetDateTime.now()).build();
+            tar.setTarParts(List.of(TarPart.builder().partName("0000").checksumAlgorithm("md5").checksumValue("cs0").build()));
+            tar.setOcflObjectVersions(List.of(version));
+            var updated = applyAtomicUpdate(indexed, mapper.mapTarFields(List.of(version)).get(0));
+
+            var database = List.of(fromDocument(mapper.mapOcflObjectVersions(List.of(version)).get(0)));
+            var index = List.of(fromDocument(updated));
+            var differences = new RecordedDifferences();
+
+            SolrIndexChecker.diff(database.iterator(), index.iterator(), differences);
+
+            assertThat(differences.same).as(layout.name()).containsExactly("urn:uuid:bag/1");
+            assertThat(differences.stale).as(layout.name()).isEmpty();
+        }
+    }
+
+    @Test
+    void diff_should_report_a_version_of_which_the_tar_fields_are_out_of_date() {
+        var mapper = new SolrDocumentMapper(new OcflObjectMetadataReader(), SolrIndexLayout.EMBEDDED);
+        var version = OcflObjectVersion.builder().bagId("urn:uuid:bag").objectVersion(1).nbn("urn:nbn:nl:ui:13-1").searchFields("{}").build();
+        var indexed = mapper.mapOcflObjectVersions(List.of(version)).get(0);
+
+        var tar = Tar.builder().tarUuid("tar1").vaultPath("path").archivalDate(OffsetDateTime.now()).build();
+        tar.setOcflObjectVersions(List.of(version));
+
+        var database = List.of(fromDocument(mapper.mapOcflObjectVersions(List.of(version)).get(0)));
+        var index = List.of(fromDocument(indexed));
+        var differences = new RecordedDifferences();
+
+        SolrIndexChecker.diff(database.iterator(), index.iterator(), differences);
+
+        assertThat(differences.stale).containsExactly("urn:uuid:bag/1");
+    }
+
+    // what Solr does with an atomic update that only sets fields
+    @SuppressWarnings("unchecked")
+    private SolrInputDocument applyAtomicUpdate(SolrInputDocument document, SolrInputDocument update) {
+        var result = document.deepCopy();
+
+        for (var name : update.getFieldNames()) {
+            if (name.equals("id") || name.equals("_version_")) {
+                continue;
+            }
+
+            var value = ((Map<String, Object>) update.getFieldValue(name)).get("set");
+
+            if (value == null) {
+                result.removeField(name);
+            }
+            else {
+                result.setField(name, value);
+            }
+        }
+
+        return result;
+    }
+
+    private SolrIndexChecker.Entry fromDocument(SolrInputDocument document) {
+        return new SolrIndexChecker.Entry((String) document.getFieldValue("id"), "urn:uuid:bag", 1, SolrDocumentMapper.getFingerprint(document::getFieldValue));
+    }
+
+    private SolrIndexChecker.Entry entry(String bagId, int objectVersion, String fingerprint) {
+        return new SolrIndexChecker.Entry(bagId + "/" + objectVersion, bagId, objectVersion, fingerprint);
+    }
+
+    private static class RecordedDifferences implements SolrIndexChecker.Differences {
+        private final List<String> same = new ArrayList<>();
+        private final List<String> missing = new ArrayList<>();
+        private final List<String> stale = new ArrayList<>();
+        private final List<String> orphaned = new ArrayList<>();
+
+        @Override
+        public void same(SolrIndexChecker.Entry entry) {
+            same.add(entry.getId());
+        }
+
+        @Override
+        public void missing(SolrIndexChecker.Entry entry) {
+            missing.add(entry.getId());
+        }
+
+        @Override
+        public void stale(SolrIndexChecker.Entry entry) {
+            stale.add(entry.getId());
+        }
+
+        @Override
+        public void orphaned(SolrIndexChecker.Entry entry) {
+            orphaned.add(entry.getId());
+        }
+    }
+}
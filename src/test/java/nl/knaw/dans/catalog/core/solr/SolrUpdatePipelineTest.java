@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.catalog.core.solr;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.catalog.core.exception.SearchIndexException;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.util.AsyncListener;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SolrUpdatePipelineTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submit_should_send_documents_in_batches() throws Exception {
+        var solrClient = Mockito.mock(Http2SolrClient.class);
+        var batchSizes = new CopyOnWriteArrayList<Integer>();
+
+        Mockito.doAnswer(invocation -> {
+            UpdateRequest request = invocation.getArgument(0);
+            AsyncListener<NamedList<Object>> listener = invocation.getArgument(2);
+            batchSizes.add(request.getDocuments().size());
+            listener.onSuccess(new NamedList<>());
+            return null;
+        }).when(solrClient).asyncRequest(Mockito.any(), Mockito.eq("collection"), Mockito.any());
+
+        var metricRegistry = new MetricRegistry();
+        var pipeline = new SolrUpdatePipeline(solrClient, "collection", 100, 3, 60_000, 2, -1, null, metricRegistry);
+
+        var future = pipeline.submit(documents(7));
+        pipeline.flush();
+        future.get(10, TimeUnit.SECONDS);
+        pipeline.close(10_000);
+
+        assertThat(batchSizes).containsExactly(3, 3, 1);
+        assertThat(metricRegistry.histogram(MetricRegistry.name(SolrUpdatePipeline.class, "batch-size")).getCount()).isEqualTo(3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submit_should_fail_when_solr_rejects_the_batch() throws Exception {
+        var solrClient = Mockito.mock(Http2SolrClient.class);
+
+        Mockito.doAnswer(invocation -> {
+            AsyncListener<NamedList<Object>> listener = invocation.getArgument(2);
+            listener.onFailure(new IOException("Solr is down"));
+            return null;
+        }).when(solrClient).asyncRequest(Mockito.any(), Mockito.eq("collection"), Mockito.any());
+
+        var pipeline = new SolrUpdatePipeline(solrClient, "collection", 100, 10, 10, 1, -1, null, new MetricRegistry());
+        var future = pipeline.submit(documents(2));
+
+        var exception = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertThat(exception.getCause()).isInstanceOf(SearchIndexException.class);
+        pipeline.close(10_000);
+    }
+
+    private List<SolrInputDocument> documents(int count) {
+        return IntStream.range(0, count)
+            .mapToObj(i -> {
+                var document = new SolrInputDocument();
+                document.setField("id", "doc" + i);
+                return document;
+            })
+            .collect(Collectors.toList());
+    }
+}
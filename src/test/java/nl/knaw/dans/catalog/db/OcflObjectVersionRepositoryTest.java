@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nl.knaw.dans.catalog.db;
+
+import io.dropwizard.testing.junit5.DAOTestExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
+import nl.knaw.dans.catalog.core.exception.OcflObjectVersionAlreadyExistsException;
+import nl.knaw.dans.catalog.core.exception.OcflObjectVersionNotFoundException;
+import org.hsqldb.jdbc.JDBCDriver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+class OcflObjectVersionRepositoryTest {
+    private final DAOTestExtension daoTestRule = DAOTestExtension.newBuilder()
+        .addEntityClass(Tar.class)
+        .addEntityClass(TarPart.class)
+        .addEntityClass(OcflObjectVersion.class)
+        .setUrl("jdbc:hsqldb:mem:" + UUID.randomUUID())
+        .setDriver(JDBCDriver.class)
+        .build();
+
+    private OcflObjectVersionDAO ocflObjectVersionRepository;
+
+    @BeforeEach
+    void setUp() {
+        ocflObjectVersionRepository = new OcflObjectVersionDAO(daoTestRule.getSessionFactory());
+
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.saveAll(List.of(
+            createVersion("bag1", 1),
+            createVersion("bag1", 2),
+            createVersion("bag2", 1),
+            createVersion("bag2", 3)
+        )));
+    }
+
+    @Test
+    void findAll_should_return_versions_in_requested_order() throws Exception {
+        var ids = List.of(
+            new OcflObjectVersionId("bag2", 3),
+            new OcflObjectVersionId("bag1", 1),
+            new OcflObjectVersionId("bag2", 1)
+        );
+
+        var result = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findAll(ids));
+
+        assertThat(result)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    void findAll_should_name_every_missing_version() {
+        var ids = List.of(
+            new OcflObjectVersionId("bag1", 1),
+            new OcflObjectVersionId("bag1", 3),
+            new OcflObjectVersionId("bag3", 1)
+        );
+
+        var exception = assertThrows(RuntimeException.class, () -> daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findAll(ids)));
+
+        assertThat(exception.getCause())
+            .isInstanceOf(OcflObjectVersionNotFoundException.class)
+            .hasMessageContaining("bagId bag1 and version 3")
+            .hasMessageContaining("bagId bag3 and version 1")
+            .hasMessageNotContaining("bagId bag1 and version 1");
+    }
+
+    @Test
+    void findAllByIds_should_ignore_missing_versions() {
+        var result = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findAllByIds(List.of(
+            new OcflObjectVersionId("bag1", 2),
+            new OcflObjectVersionId("bag2", 2)
+        )));
+
+        assertThat(result)
+            .extracting(OcflObjectVersion::getId)
+            .containsOnly(new OcflObjectVersionId("bag1", 2));
+    }
+
+    @Test
+    void save_should_insert_new_version() {
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.save(createVersion("bag3", 1)));
+
+        var result = daoTestRule.inTransaction(() -> {
+            daoTestRule.getSessionFactory().getCurrentSession().clear();
+            return ocflObjectVersionRepository.findByBagIdAndVersion("bag3", 1);
+        });
+
+        assertThat(result).isPresent();
+        assertThat(result.get().getCreated()).isNotNull();
+        assertThat(result.get().getUpdated()).isNull();
+    }
+
+    @Test
+    void save_should_overwrite_skeleton_record() {
+        var skeleton = createVersion("bag3", 1);
+        skeleton.setSkeletonRecord(true);
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.saveAll(List.of(skeleton)));
+
+        var version = createVersion("bag3", 1);
+        version.setNbn("urn:nbn:1");
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.save(version));
+
+        var result = daoTestRule.inTransaction(() -> {
+            daoTestRule.getSessionFactory().getCurrentSession().clear();
+            return ocflObjectVersionRepository.findAllByBagId("bag3");
+        });
+
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).isSkeletonRecord()).isFalse();
+        assertThat(result.get(0).getNbn()).isEqualTo("urn:nbn:1");
+        assertThat(result.get(0).getCreated()).isNotNull();
+        assertThat(result.get(0).getUpdated()).isNotNull();
+    }
+
+    @Test
+    void save_should_return_the_values_generated_by_the_database() {
+        var skeleton = createVersion("bag3", 1);
+        skeleton.setSkeletonRecord(true);
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.saveAll(List.of(skeleton)));
+
+        var inserted = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.save(createVersion("bag4", 1)));
+        var replaced = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.save(createVersion("bag3", 1)));
+
+        assertThat(inserted.getInternalId()).isNotNull();
+        assertThat(inserted.getCreated()).isNotNull();
+        assertThat(inserted.getUpdated()).isNull();
+        assertThat(replaced.getInternalId()).isEqualTo(skeleton.getInternalId());
+        assertThat(replaced.getCreated()).isNotNull();
+        assertThat(replaced.getUpdated()).isNotNull();
+    }
+
+    @Test
+    void save_should_not_leave_a_replaced_skeleton_record_in_the_session() {
+        var skeleton = createVersion("bag3", 1);
+        skeleton.setSkeletonRecord(true);
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.saveAll(List.of(skeleton)));
+
+        var result = daoTestRule.inTransaction(() -> {
+            ocflObjectVersionRepository.findByBagIdAndVersion("bag3", 1).orElseThrow();
+
+            var version = createVersion("bag3", 1);
+            version.setNbn("urn:nbn:1");
+            ocflObjectVersionRepository.save(version);
+
+            return ocflObjectVersionRepository.findByBagIdAndVersion("bag3", 1).orElseThrow();
+        });
+
+        assertThat(result.isSkeletonRecord()).isFalse();
+        assertThat(result.getNbn()).isEqualTo("urn:nbn:1");
+    }
+
+    @Test
+    void save_should_store_search_fields() {
+        var skeleton = createVersion("bag3", 1);
+        skeleton.setSkeletonRecord(true);
+        skeleton.setTitle("Old title");
+        skeleton.setDescription("Old description");
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.saveAll(List.of(skeleton)));
+
+        var version = createVersion("bag3", 1);
+        version.setSearchFields("{\"title\":[\"A title\"]}");
+        version.setTitle("A title");
+        daoTestRule.inTransaction(() -> ocflObjectVersionRepository.save(version));
+
+        var result = daoTestRule.inTransaction(() -> {
+            daoTestRule.getSessionFactory().getCurrentSession().clear();
+            return ocflObjectVersionRepository.findByBagIdAndVersion("bag3", 1);
+        });
+
+        assertThat(result).isPresent();
+        assertThat(result.get().getSearchFields()).isEqualTo("{\"title\":[\"A title\"]}");
+        assertThat(result.get().getTitle()).isEqualTo("A title");
+        assertThat(result.get().getDescription()).isNull();
+    }
+
+    @Test
+    void save_should_not_overwrite_existing_version() {
+        var version = createVersion("bag1", 1);
+        version.setNbn("urn:nbn:1");
+
+        var exception = assertThrows(RuntimeException.class, () -> daoTestRule.inTransaction(() -> ocflObjectVersionRepository.save(version)));
+
+        assertThat(exception.getCause()).isInstanceOf(OcflObjectVersionAlreadyExistsException.class);
+    }
+
+    @Test
+    void findPage_should_return_pages_in_id_order() {
+        var firstPage = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findPage(ReindexScope.all(), null, 3));
+        var secondPage = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findPage(ReindexScope.all(), new OcflObjectVersionId("bag2", 1), 3));
+
+        assertThat(firstPage)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag1", 1), new OcflObjectVersionId("bag1", 2), new OcflObjectVersionId("bag2", 1));
+        assertThat(secondPage)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag2", 3));
+    }
+
+    @Test
+    void findPage_should_only_return_versions_in_range() {
+        var scope = ReindexScope.builder().from("bag1").to("bag2").build();
+        var page = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findPage(scope, null, 10));
+
+        assertThat(page)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag1", 1), new OcflObjectVersionId("bag1", 2));
+    }
+
+    @Test
+    void findPage_with_since_should_return_changed_versions_and_versions_of_changed_tars_with_tar_loaded() {
+        var cutoff = OffsetDateTime.now().minusHours(1);
+
+        daoTestRule.inTransaction(() -> {
+            var session = daoTestRule.getSessionFactory().getCurrentSession();
+            var tar = Tar.builder()
+                .tarUuid("tar1")
+                .vaultPath("path")
+                .build();
+
+            tar.setTarParts(List.of(TarPart.builder()
+                .partName("0000")
+                .checksumAlgorithm("md5")
+                .checksumValue("cs")
+                .build()));
+            tar.setOcflObjectVersions(ocflObjectVersionRepository.findAllByIds(List.of(new OcflObjectVersionId("bag2", 3))));
+
+            new TarDAO(daoTestRule.getSessionFactory()).save(tar);
+
+            session.createQuery("update OcflObjectVersion set created = :old, updated = :old where bagId = 'bag2'")
+                .setParameter("old", cutoff.minusDays(1))
+                .executeUpdate();
+            session.clear();
+        });
+
+        var page = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findPage(ReindexScope.builder().since(cutoff).build(), null, 10));
+
+        // bag1 versions were created after the cutoff, bag2 version 3 is in a TAR that was, bag2 version 1 is not
+        assertThat(page)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag1", 1), new OcflObjectVersionId("bag1", 2), new OcflObjectVersionId("bag2", 3));
+        assertThat(page.get(2).getTar().getTarParts())
+            .extracting(TarPart::getPartName)
+            .containsExactly("0000");
+
+        // the changes found in different ways are merged into pages in the same order
+        var scope = ReindexScope.builder().since(cutoff).build();
+        var firstPage = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findPage(scope, null, 2));
+        var secondPage = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findPage(scope, new OcflObjectVersionId("bag1", 2), 2));
+
+        assertThat(firstPage)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag1", 1), new OcflObjectVersionId("bag1", 2));
+        assertThat(secondPage)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag2", 3));
+    }
+
+    @Test
+    void findWithoutSearchFields_should_only_return_versions_with_metadata_to_extract() {
+        daoTestRule.inTransaction(() -> {
+            var session = daoTestRule.getSessionFactory().getCurrentSession();
+            session.createQuery("update OcflObjectVersion set metadata = '{}' where bagId = 'bag1' or objectVersion = 3")
+                .executeUpdate();
+            session.createQuery("update OcflObjectVersion set searchFields = '{}' where bagId = 'bag1' and objectVersion = 2")
+                .executeUpdate();
+            session.clear();
+        });
+
+        var firstPage = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findWithoutSearchFields(null, 1));
+        var secondPage = daoTestRule.inTransaction(() -> ocflObjectVersionRepository.findWithoutSearchFields(new OcflObjectVersionId("bag1", 1), 10));
+
+        // bag1 version 2 already has search fields, bag2 version 1 has no metadata
+        assertThat(firstPage)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag1", 1));
+        assertThat(secondPage)
+            .extracting(OcflObjectVersion::getId)
+            .containsExactly(new OcflObjectVersionId("bag2", 3));
+    }
+
+    private OcflObjectVersion createVersion(String bagId, int version) {
+        return OcflObjectVersion.builder()
+            .bagId(bagId)
+            .objectVersion(version)
+            .created(OffsetDateTime.now())
+            .build();
+    }
+}
@@ -19,6 +19,8 @@ package nl.knaw.dans.catalog.db;
 import io.dropwizard.testing.junit5.DAOTestExtension;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
 import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.catalog.core.domain.OcflObjectVersionId;
+import nl.knaw.dans.catalog.core.domain.ReindexScope;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -114,7 +116,7 @@ class TarRepositoryTest {
         });
 
         daoTestRule.inTransaction(() -> {
-            var versionsBefore = ocflObjectVersionRepository.findAll();
+            var versionsBefore = ocflObjectVersionRepository.findPage(ReindexScope.all(), null, 100);
             assertThat(versionsBefore).isNotEmpty();
 
             var partsBefore = tarRepository.findAllParts();
@@ -132,7 +134,7 @@ class TarRepositoryTest {
             assertThat(tars).isEmpty();
 
             // these should not be deleted
-            var versions = ocflObjectVersionRepository.findAll();
+            var versions = ocflObjectVersionRepository.findPage(ReindexScope.all(), null, 100);
             assertThat(versions)
                 .isNotEmpty()
                 .extracting("tar")
@@ -143,4 +145,117 @@ class TarRepositoryTest {
             assertThat(parts).isEmpty();
         });
     }
+
+    @Test
+    void save_should_replace_membership_of_existing_tar() {
+        daoTestRule.inTransaction(() -> {
+            var versions = ocflObjectVersionRepository.saveAll(List.of(
+                createVersion("bag1"),
+                createVersion("bag2"),
+                createVersion("bag3")
+            ));
+
+            var tar = Tar.builder()
+                .tarUuid("uuid1")
+                .vaultPath("path")
+                .archivalDate(OffsetDateTime.now())
+                .build();
+
+            tar.setTarParts(List.of());
+            tar.setOcflObjectVersions(versions.subList(0, 2));
+            tarRepository.save(tar);
+        });
+
+        var result = daoTestRule.inTransaction(() -> {
+            var tar = tarRepository.getTarById("uuid1").orElseThrow();
+            tar.setOcflObjectVersions(ocflObjectVersionRepository.findAllByIds(List.of(
+                new OcflObjectVersionId("bag2", 1),
+                new OcflObjectVersionId("bag3", 1)
+            )));
+
+            return tarRepository.save(tar);
+        });
+
+        assertThat(result.getOcflObjectVersions())
+            .extracting(OcflObjectVersion::getBagId)
+            .containsExactlyInAnyOrder("bag2", "bag3");
+        assertThat(result.getOcflObjectVersions())
+            .extracting(OcflObjectVersion::getTar)
+            .containsOnly(result);
+
+        daoTestRule.inTransaction(() -> {
+            daoTestRule.getSessionFactory().getCurrentSession().clear();
+
+            assertThat(ocflObjectVersionRepository.findPage(ReindexScope.all(), null, 100))
+                .extracting(version -> version.getBagId() + ":" + (version.getTar() == null ? null : version.getTar().getTarUuid()))
+                .containsExactlyInAnyOrder("bag1:null", "bag2:uuid1", "bag3:uuid1");
+        });
+    }
+
+    @Test
+    void save_should_leave_the_session_consistent_with_the_database() {
+        daoTestRule.inTransaction(() -> {
+            var versions = ocflObjectVersionRepository.saveAll(List.of(
+                createVersion("bag1"),
+                createVersion("bag2")
+            ));
+
+            var tar = Tar.builder()
+                .tarUuid("uuid1")
+                .vaultPath("path")
+                .archivalDate(OffsetDateTime.now())
+                .build();
+
+            tar.setTarParts(List.of());
+            tar.setOcflObjectVersions(versions.subList(0, 1));
+            tarRepository.save(tar);
+        });
+
+        daoTestRule.inTransaction(() -> {
+            var tar = tarRepository.getTarById("uuid1").orElseThrow();
+            tar.setOcflObjectVersions(ocflObjectVersionRepository.findAllByIds(List.of(new OcflObjectVersionId("bag2", 1))));
+            tarRepository.save(tar);
+
+            // read again in the same session, after the bulk updates
+            assertThat(ocflObjectVersionRepository.findAllByIds(List.of(new OcflObjectVersionId("bag1", 1), new OcflObjectVersionId("bag2", 1))))
+                .extracting(version -> version.getBagId() + ":" + (version.getTar() == null ? null : version.getTar().getTarUuid()))
+                .containsExactlyInAnyOrder("bag1:null", "bag2:uuid1");
+        });
+    }
+
+    @Test
+    void findPage_should_return_the_tars_after_the_given_one_with_their_parts() {
+        daoTestRule.inTransaction(() -> {
+            for (var tarUuid : List.of("uuid3", "uuid1", "uuid2")) {
+                var tar = Tar.builder()
+                    .tarUuid(tarUuid)
+                    .vaultPath("path")
+                    .archivalDate(OffsetDateTime.now())
+                    .build();
+
+                tar.setTarParts(List.of(TarPart.builder().partName("0000").checksumAlgorithm("md5").checksumValue(tarUuid).build()));
+                tar.setOcflObjectVersions(List.of());
+                tarRepository.save(tar);
+            }
+        });
+
+        daoTestRule.inTransaction(() -> {
+            daoTestRule.getSessionFactory().getCurrentSession().clear();
+
+            assertThat(tarRepository.findPage(null, 2))
+                .extracting(Tar::getTarUuid)
+                .containsExactly("uuid1", "uuid2");
+            assertThat(tarRepository.findPage("uuid2", 2))
+                .extracting(tar -> tar.getTarUuid() + ":" + tar.getTarParts().get(0).getChecksumValue())
+                .containsExactly("uuid3:uuid3");
+        });
+    }
+
+    private OcflObjectVersion createVersion(String bagId) {
+        return OcflObjectVersion.builder()
+            .bagId(bagId)
+            .objectVersion(1)
+            .created(OffsetDateTime.now())
+            .build();
+    }
 }
@@ -29,6 +29,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
 import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
@@ -235,6 +236,43 @@ class OcflObjectApiResourceIntegrationTest {
         }
     }
 
+    @Test
+    public void createOcflVersions_should_return_result_per_item() throws Exception {
+        var client = EXT.client();
+        var bagId = "urn:uuid:" + UUID.randomUUID();
+        var parameters = new OcflObjectVersionParametersDto()
+            .dataSupplier("test")
+            .nbn("someNbn");
+
+        var items = List.of(
+            new OcflObjectVersionBulkItemDto().bagId(bagId).objectVersion(1).parameters(parameters),
+            new OcflObjectVersionBulkItemDto().bagId(bagId).objectVersion(2).parameters(parameters),
+            new OcflObjectVersionBulkItemDto().bagId(bagId).objectVersion(1).parameters(parameters)
+        );
+
+        var str = EXT.getObjectMapper().writeValueAsString(items);
+        var url = String.format("http://localhost:%d/ocflObject/bulk", EXT.getLocalPort());
+
+        try (var response = client.target(url).request().post(Entity.json(str))) {
+            assertEquals(200, response.getStatus());
+
+            var results = response.readEntity(new GenericType<List<OcflObjectVersionBulkResultDto>>() {
+            });
+
+            assertEquals(3, results.size());
+            assertEquals(OcflObjectVersionBulkResultDto.StatusEnum.CREATED, results.get(0).getStatus());
+            assertEquals(OcflObjectVersionBulkResultDto.StatusEnum.CREATED, results.get(1).getStatus());
+            assertEquals(OcflObjectVersionBulkResultDto.StatusEnum.CONFLICT, results.get(2).getStatus());
+        }
+
+        var versionUrl = String.format("http://localhost:%d/ocflObject/bagId/%s/version/%s", EXT.getLocalPort(), bagId, 2);
+
+        try (var response = client.target(versionUrl).request().get()) {
+            assertEquals(200, response.getStatus());
+            assertEquals(bagId, response.readEntity(OcflObjectVersionDto.class).getBagId());
+        }
+    }
+
     Map<String, Object> getMetadata() throws JsonProcessingException {
         var str = "{\n" +
             "  \"dcterms:modified\": \"2021-11-17\",\n" +
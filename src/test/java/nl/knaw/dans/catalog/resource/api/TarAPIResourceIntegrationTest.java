@@ -57,6 +57,27 @@ class TarAPIResourceIntegrationTest {
         SUPPORT.after();
     }
 
+    @Test
+    public void createTar_should_return_201_when_waiting_until_the_tar_is_visible() throws Exception {
+        var client = new JerseyClientBuilder().build();
+        var entity = new TarParameterDto()
+            .archivalDate(OffsetDateTime.now())
+            .vaultPath("test")
+            .tarUuid(UUID.randomUUID());
+
+        var str = SUPPORT.getObjectMapper().writeValueAsString(entity);
+
+        // returns once the outbox entry of the TAR has been sent; 202 if that did not happen within the timeout
+        try (var response = client.target(
+                String.format("http://localhost:%d/tar", SUPPORT.getLocalPort()))
+            .queryParam("waitUntilVisible", true)
+            .request()
+            .post(Entity.json(str))) {
+
+            assertEquals(201, response.getStatus());
+        }
+    }
+
     @Test
     // TODO should we really accept empty tars?
     public void createEmptyTar_should_return_200() throws Exception {